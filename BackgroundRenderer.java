@@ -0,0 +1,256 @@
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Draws the shapes into a Raster on its own thread, so the JavaFX thread never
+ * does any shape drawing. When a frame is done the JavaFX thread copies it into
+ * a PixelBuffer in one go and the ImageView shows it on the next pulse.
+ *
+ * Asking for a frame never waits: it copies the shapes on screen and wakes the
+ * worker up. If a newer frame gets asked for while one is drawing, the old
+ * one is dropped part way and the worker starts on the new one.
+ *
+ * On a HiDPI screen the frames are drawn at the screen's pixel scale and the
+ * ImageView shrinks them back to the drawing area's size, so they stay sharp.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class BackgroundRenderer
+{
+    private final int width;
+    private final int height;
+    private final double pixelScale;
+    private final int[] front;
+    private final PixelBuffer<IntBuffer> buffer;
+    private final ImageView view;
+
+    //two rasters go back and forth between the worker and the JavaFX thread
+    private final ArrayBlockingQueue<Raster> free = new ArrayBlockingQueue<Raster>(2);
+    private final AtomicReference<Raster> finished = new AtomicReference<Raster>();
+    private final AtomicReference<Job> next = new AtomicReference<Job>();
+    private final Thread worker;
+    private final ParallelRasterizer rasterizer = new ParallelRasterizer();
+    private volatile boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+    private boolean draft = false;
+
+    //stats
+    private volatile long framesDrawn;
+    private volatile long framesDropped;
+    private long framesShown;
+
+    /**
+     * Constructor for BackgroundRenderer, starts the worker thread
+     *
+     * @param width     width of the picture in pixels
+     * @param height    height of the picture in pixels
+     */
+    public BackgroundRenderer(int width, int height) {
+        this(width, height, 1);
+    }
+
+    /**
+     * Constructor for BackgroundRenderer, starts the worker thread
+     *
+     * @param width         width of the drawing area
+     * @param height        height of the drawing area
+     * @param pixelScale    screen pixels per unit of width and height, frames get drawn this much bigger
+     */
+    public BackgroundRenderer(int width, int height, double pixelScale) {
+        this.pixelScale = pixelScale;
+        this.width = (int)Math.ceil(width * pixelScale);
+        this.height = (int)Math.ceil(height * pixelScale);
+        width = this.width;
+        height = this.height;
+        front = new int[width * height];
+        buffer = new PixelBuffer<IntBuffer>(width, height, IntBuffer.wrap(front), PixelFormat.getIntArgbPreInstance());
+        view = new ImageView(new WritableImage(buffer));
+        view.setFitWidth(width / pixelScale);
+        view.setFitHeight(height / pixelScale);
+        free.add(new Raster(width, height));
+        free.add(new Raster(width, height));
+
+        worker = new Thread(this::run, "MacroHardSketch renderer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * asks for a new frame. Call on the JavaFX thread, returns right away.
+     *
+     * @param shapes    all shapes, bottom to top
+     * @param viewport  the viewport to draw through
+     */
+    public void requestFrame(List<Shape> shapes, Viewport viewport) {
+        //only what's on screen goes to the worker, as shapes of its own. A ShapeStore's get() makes
+        //copies, so the JavaFX thread can keep changing the arrays while the worker draws.
+        double vx = viewport.toWorldX(0);
+        double vy = viewport.toWorldY(0);
+        double vw = viewport.getWidth() / viewport.getScale();
+        double vh = viewport.getHeight() / viewport.getScale();
+        ArrayList<Shape> visible = new ArrayList<Shape>();
+        for(int i = 0; i < shapes.size(); i++) {
+            if(ShapeStore.intersects(shapes, i, vx, vy, vw, vh)) visible.add(shapes.get(i));
+        }
+        Job job = new Job(visible.toArray(new Shape[visible.size()]), viewport, pixelScale, draft);
+        if(next.getAndSet(job) != null) framesDropped++;
+        synchronized(next) {
+            next.notify();
+        }
+    }
+
+    /**
+     * the worker thread, draws whatever the newest job is
+     */
+    private void run() {
+        try {
+            while(true) {
+                Job job;
+                synchronized(next) {
+                    while((job = next.getAndSet(null)) == null) next.wait();
+                }
+                Raster r = free.take();
+                if(draw(job, r)) {
+                    framesDrawn++;
+                    Raster stale = finished.getAndSet(r);
+                    if(stale != null) free.add(stale);
+                    else Platform.runLater(this::publish);
+                } else {
+                    framesDropped++;
+                    free.add(r);
+                }
+            }
+        } catch(InterruptedException e) {
+            //only happens on shutdown, nothing to clean up
+        }
+    }
+
+    /**
+     * draws one frame
+     *
+     * @return      false if a newer job showed up before it finished
+     */
+    private boolean draw(Job job, Raster r) {
+        r.resetClip();
+        r.setDraft(job.draft);
+        if(parallel) return rasterizer.render(r, job.shapes, job.scale, job.offX, job.offY, () -> next.get() != null);
+
+        r.clear(Color.WHITE);
+        r.setTransform(job.scale, -job.offX * job.scale, -job.offY * job.scale);
+        double vw = width / job.scale;
+        double vh = height / job.scale;
+        for(int i = 0; i < job.shapes.length; i++) {
+            if((i & 255) == 255 && next.get() != null) return false;
+            Shape s = job.shapes[i];
+            if(s.intersects(job.offX, job.offY, vw, vh)) s.draw(r);
+        }
+        return true;
+    }
+
+    /**
+     * runs on the JavaFX thread, copies the finished frame into the PixelBuffer
+     */
+    private void publish() {
+        Raster r = finished.getAndSet(null);
+        if(r == null) return;
+        buffer.updateBuffer(b -> {
+            SpanKernels.copy(r.getPixels(), 0, front, 0, front.length);
+            return null;
+        });
+        free.add(r);
+        framesShown++;
+    }
+
+    /**
+     * stops the worker thread, the renderer can't be used after this
+     */
+    public void shutdown() {
+        worker.interrupt();
+    }
+
+    /**
+     * @param parallel  true to split each frame into tiles drawn on every core, false to draw it on the worker alone
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param draft     true to draw frames asked for from now on in draft quality, see Raster.setDraft
+     */
+    public void setDraft(boolean draft) {
+        this.draft = draft;
+    }
+
+    /**
+     * @return      screen pixels per unit the frames are drawn at
+     */
+    public double getPixelScale() {
+        return pixelScale;
+    }
+
+    /**
+     * @return      the node showing the frames, goes where the shape canvas would
+     */
+    public ImageView getView() {
+        return view;
+    }
+
+    /**
+     * @return      how many frames the worker finished
+     */
+    public long getFramesDrawn() {
+        return framesDrawn;
+    }
+
+    /**
+     * @return      how many frames were skipped because a newer one was asked for
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @return      how many frames made it onto the screen
+     */
+    public long getFramesShown() {
+        return framesShown;
+    }
+
+    /**
+     * @return      stats about the BackgroundRenderer
+     */
+    public String toString() {
+        return "BackgroundRenderer: drawn = " + framesDrawn + "  dropped = " + framesDropped + "  shown = " + framesShown;
+    }
+
+    /**
+     * Everything the worker needs for one frame. Shapes from a ShapeStore are copies, so the
+     * JavaFX thread can keep moving, adding and undoing them while the frame draws.
+     */
+    private static class Job
+    {
+        private final Shape[] shapes;
+        private final double scale;
+        private final double offX;
+        private final double offY;
+        private final boolean draft;
+
+        private Job(Shape[] shapes, Viewport viewport, double pixelScale, boolean draft) {
+            this.shapes = shapes;
+            this.draft = draft;
+            scale = viewport.getScale() * pixelScale;
+            offX = viewport.toWorldX(0);
+            offY = viewport.toWorldY(0);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.List;
+
+/**
+ * Keeps track of the part of the canvas that needs repainting. Everything
+ * that gets damaged is unioned into one box, snapped out to whole pixels so
+ * clearing it doesn't leave half-erased anti-aliased edges behind.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class DirtyRegion
+{
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private boolean empty = true;
+
+    /**
+     * adds the painted area of a shape to the region, in screen pixels
+     *
+     * @param s     the shape that changed
+     * @param view  the viewport the shape is seen through
+     */
+    public void add(Shape s, Viewport view) {
+        double x0 = view.toScreenX(s.getMinX()) - 1;
+        double y0 = view.toScreenY(s.getMinY()) - 1;
+        double x1 = view.toScreenX(s.getMaxX()) + 1;
+        double y1 = view.toScreenY(s.getMaxY()) + 1;
+        add(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * adds the area a shape covers on screen, without a copy if it's a ShapeStore
+     *
+     * @param shapes    the shapes
+     * @param i         index of the shape
+     * @param view      viewport the shape is seen through
+     */
+    public void add(List<Shape> shapes, int i, Viewport view) {
+        double x0 = view.toScreenX(ShapeStore.getMinX(shapes, i)) - 1;
+        double y0 = view.toScreenY(ShapeStore.getMinY(shapes, i)) - 1;
+        double x1 = view.toScreenX(ShapeStore.getMaxX(shapes, i)) + 1;
+        double y1 = view.toScreenY(ShapeStore.getMaxY(shapes, i)) + 1;
+        add(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * adds a rectangle to the region
+     *
+     * @param x     left edge
+     * @param y     top edge
+     * @param w     width
+     * @param h     height
+     */
+    public void add(double x, double y, double w, double h) {
+        double x0 = Math.floor(x);
+        double y0 = Math.floor(y);
+        double x1 = Math.ceil(x + w);
+        double y1 = Math.ceil(y + h);
+        if(empty) {
+            minX = x0;
+            minY = y0;
+            maxX = x1;
+            maxY = y1;
+            empty = false;
+        } else {
+            minX = Math.min(minX, x0);
+            minY = Math.min(minY, y0);
+            maxX = Math.max(maxX, x1);
+            maxY = Math.max(maxY, y1);
+        }
+    }
+
+    /**
+     * empties the region, call this once it has been repainted
+     */
+    public void clear() {
+        empty = true;
+    }
+
+    /**
+     * @return      true if nothing needs repainting
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return      left edge of the region
+     */
+    public double getX() {
+        return minX;
+    }
+
+    /**
+     * @return      top edge of the region
+     */
+    public double getY() {
+        return minY;
+    }
+
+    /**
+     * @return      width of the region
+     */
+    public double getWidth() {
+        return maxX - minX;
+    }
+
+    /**
+     * @return      height of the region
+     */
+    public double getHeight() {
+        return maxY - minY;
+    }
+}
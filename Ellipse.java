@@ -38,6 +38,21 @@ public class Ellipse extends Shape
         super(siz, fillColor, borderColor, pos, lineWidth);
     }
     
+    /**
+     *  Constructor for another copy of an Ellipse that already exists, it keeps that one's id
+     *  
+     *  @param siz              Vector size of the Ellipse
+     *  @param fillColor        the fill color of the Ellipse
+     *  @param borderColor      the border color of the Ellipse
+     *  @param pos              Vector position of the Ellipse
+     *  @param lineWidth        stroke thickness of the Shape
+     *  @param id               the id of the Ellipse this is a copy of
+     */
+    public Ellipse(Vector siz, Color fillColor, Color borderColor, Vector pos, int lineWidth, int id)
+    {
+        super(siz, fillColor, borderColor, pos, lineWidth, id);
+    }
+    
     
     /**
      * draws the Ellipse
@@ -48,13 +63,166 @@ public class Ellipse extends Shape
      * @version     1.00
      */
     public void draw(GraphicsContext gc)
+    {
+       draw(gc, pos.getX(), pos.getY(), siz.getX(), siz.getY(), fillColor, borderColor, lineWidth);
+    }
+    
+    
+    /**
+     * draws an ellipse that isn't an object, like one kept in a ShapeStore
+     * 
+     * @param gc            GraphicsContext to draw onto
+     * @param x             left edge of the bounding box
+     * @param y             top edge of the bounding box
+     * @param w             width
+     * @param h             height
+     * @param fillColor     the fill color
+     * @param borderColor   the border color
+     * @param lineWidth     stroke thickness, 0 for no border
+     */
+    public static void draw(GraphicsContext gc, double x, double y, double w, double h, Color fillColor, Color borderColor, int lineWidth)
     {
        gc.setFill(fillColor);
-       gc.fillOval(pos.getX(),pos.getY(), siz.getX(), siz.getY());
+       gc.fillOval(x, y, w, h);
        
+       if(lineWidth <= 0) return;
        gc.setLineWidth(lineWidth);
        gc.setStroke(borderColor);
-       gc.strokeOval(pos.getX(),pos.getY(), siz.getX(), siz.getY());
+       gc.strokeOval(x, y, w, h);
+    }
+    
+    
+    /**
+     * draws the Ellipse into a Raster, works on any thread
+     * 
+     * @param r     the Raster to draw into
+     */
+    public void draw(Raster r)
+    {
+       draw(r, pos.getX(), pos.getY(), siz.getX(), siz.getY(), fillColor, borderColor, lineWidth);
+    }
+    
+    
+    /**
+     * draws an ellipse that isn't an object into a Raster, works on any thread
+     * 
+     * @param r             the Raster to draw into
+     * @param x             left edge of the bounding box
+     * @param y             top edge of the bounding box
+     * @param w             width
+     * @param h             height
+     * @param fillColor     the fill color
+     * @param borderColor   the border color
+     * @param lineWidth     stroke thickness, 0 for no border
+     */
+    public static void draw(Raster r, double x, double y, double w, double h, Color fillColor, Color borderColor, int lineWidth)
+    {
+       r.fillEllipse(x, y, w, h, fillColor);
+       if(lineWidth <= 0) return;
+       r.strokeEllipse(x, y, w, h, lineWidth, borderColor);
+    }
+    
+    
+    /**
+     * adds the outline of the Ellipse to the current path
+     * 
+     * @param gc    GraphicsContext the path is being built on
+     */
+    public void appendPath(GraphicsContext gc)
+    {
+       appendPath(gc, pos.getX(), pos.getY(), siz.getX(), siz.getY());
+    }
+    
+    
+    /**
+     * adds the outline of an ellipse that isn't an object to the current path
+     * 
+     * @param gc    GraphicsContext the path is being built on
+     * @param x     left edge of the bounding box
+     * @param y     top edge of the bounding box
+     * @param w     width
+     * @param h     height
+     */
+    public static void appendPath(GraphicsContext gc, double x, double y, double w, double h)
+    {
+       double rx = w / 2;
+       double ry = h / 2;
+       gc.moveTo(x + w, y + ry);
+       gc.arc(x + rx, y + ry, rx, ry, 0, 360);
+       gc.closePath();
+    }
+    
+    
+    /**
+     * checks if a point is on the Ellipse, border included
+     * 
+     * @param x     x of the point in world coordinates
+     * @param y     y of the point in world coordinates
+     * @return      true if the point is on the fill or the border
+     */
+    public boolean contains(double x, double y)
+    {
+       return contains(x, y, pos.getX(), pos.getY(), siz.getX(), siz.getY(), lineWidth);
+    }
+    
+    
+    /**
+     * checks if a point is on an ellipse that isn't an object, border included
+     * 
+     * @param px            x of the point in world coordinates
+     * @param py            y of the point in world coordinates
+     * @param x             left edge of the bounding box
+     * @param y             top edge of the bounding box
+     * @param w             width
+     * @param h             height
+     * @param lineWidth     stroke thickness
+     * @return              true if the point is on the fill or the border
+     */
+    public static boolean contains(double px, double py, double x, double y, double w, double h, int lineWidth)
+    {
+       double half = Math.max(0, lineWidth) / 2.0;
+       double rx = w / 2 + half;
+       double ry = h / 2 + half;
+       double dx = (px - x - w / 2) / rx;
+       double dy = (py - y - h / 2) / ry;
+       return dx * dx + dy * dy <= 1;
+    }
+    
+    
+    /**
+     * gives the part of the Ellipse that nothing shows through
+     * 
+     * @param out   gets the box as {minX, minY, maxX, maxY}
+     * @return      false if the fill is see-through
+     */
+    public boolean getSolidArea(double[] out)
+    {
+       return getSolidArea(pos.getX(), pos.getY(), siz.getX(), siz.getY(), fillColor, out);
+    }
+    
+    
+    /**
+     * gives the part of an ellipse that isn't an object that nothing shows through
+     * 
+     * @param x             left edge of the bounding box
+     * @param y             top edge of the bounding box
+     * @param w             width
+     * @param h             height
+     * @param fillColor     the fill color
+     * @param out           gets the box as {minX, minY, maxX, maxY}
+     * @return              false if the fill is see-through
+     */
+    public static boolean getSolidArea(double x, double y, double w, double h, Color fillColor, double[] out)
+    {
+       if(fillColor.getOpacity() < 1) return false;
+       //biggest box that fits inside the ellipse, its corners touch the edge
+       double insetX = w * (1 - Math.sqrt(0.5)) / 2;
+       double insetY = h * (1 - Math.sqrt(0.5)) / 2;
+       out[0] = x + insetX;
+       out[1] = y + insetY;
+       out[2] = x + w - insetX;
+       out[3] = y + h - insetY;
+       return true;
     }
     
     
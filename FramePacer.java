@@ -0,0 +1,219 @@
+import javafx.animation.AnimationTimer;
+import java.util.Arrays;
+
+/**
+ * Holds on to input until the next JavaFX pulse, then hands it all to the
+ * app in the order it came in and has the app repaint once. A burst of
+ * clicks, scroll ticks or drag moves between two frames costs one repaint
+ * instead of one each.
+ *
+ * Events are kept in plain arrays so queuing one never allocates. Drag moves
+ * in a row (panning or dragging a selection) get added together, and so do
+ * scroll ticks at the same spot, so the queue stays short however fast the
+ * events come.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class FramePacer extends AnimationTimer
+{
+    public static final int ZOOM = 0;
+    public static final int PAN = 1;
+    public static final int CLICK = 2;
+    public static final int DRAG = 3;
+    public static final int RELEASE = 4;
+
+    private final MacroHardSketch app;
+    private int[] types = new int[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private double[] values = new double[16];
+    private int count = 0;
+    private int received = 0;
+    private boolean repaint = false;
+    private boolean applying = false;
+
+    //stats
+    private long frames;
+    private long eventsReceived;
+    private long coalesced;
+    private int lastFrameEvents;
+
+    /**
+     * Constructor for FramePacer
+     *
+     * @param app       the app to hand input to and repaint
+     */
+    public FramePacer(MacroHardSketch app) {
+        this.app = app;
+    }
+
+    /**
+     * queues a zoom, applied on the next pulse
+     *
+     * @param sx        screen x to zoom around
+     * @param sy        screen y to zoom around
+     * @param factor    how much to multiply the zoom by
+     */
+    public void zoom(double sx, double sy, double factor) {
+        received++;
+        if(count > 0 && types[count - 1] == ZOOM && xs[count - 1] == sx && ys[count - 1] == sy) {
+            values[count - 1] *= factor;
+            return;
+        }
+        add(ZOOM, sx, sy, factor);
+    }
+
+    /**
+     * queues a pan, applied on the next pulse
+     *
+     * @param dx        how far to move the view right, in screen pixels
+     * @param dy        how far to move the view down, in screen pixels
+     */
+    public void pan(double dx, double dy) {
+        received++;
+        if(count > 0 && types[count - 1] == PAN) {
+            xs[count - 1] += dx;
+            ys[count - 1] += dy;
+            return;
+        }
+        add(PAN, dx, dy, 0);
+    }
+
+    /**
+     * queues a primary button click on the drawing area, applied on the next pulse
+     *
+     * @param sx        screen x of the click
+     * @param sy        screen y of the click
+     */
+    public void click(double sx, double sy) {
+        received++;
+        add(CLICK, sx, sy, 0);
+    }
+
+    /**
+     * queues a primary button drag on the drawing area, applied on the next pulse
+     *
+     * @param dx        how far the mouse moved right, in screen pixels
+     * @param dy        how far the mouse moved down, in screen pixels
+     */
+    public void drag(double dx, double dy) {
+        received++;
+        if(count > 0 && types[count - 1] == DRAG) {
+            xs[count - 1] += dx;
+            ys[count - 1] += dy;
+            return;
+        }
+        add(DRAG, dx, dy, 0);
+    }
+
+    /**
+     * queues letting go of the primary button, applied on the next pulse
+     *
+     * @param sx        screen x where it was let go
+     * @param sy        screen y where it was let go
+     */
+    public void release(double sx, double sy) {
+        received++;
+        add(RELEASE, sx, sy, 0);
+    }
+
+    private void add(int type, double x, double y, double value) {
+        if(count == types.length) {
+            types = Arrays.copyOf(types, count * 2);
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        types[count] = type;
+        xs[count] = x;
+        ys[count] = y;
+        values[count] = value;
+        count++;
+    }
+
+    /**
+     * asks for a repaint on the next pulse, for changes that didn't come through the queue
+     */
+    public void requestRepaint() {
+        //changes made while the queue is being applied get the repaint that comes right after
+        if(applying) return;
+        received++;
+        repaint = true;
+    }
+
+    /**
+     * called by JavaFX once per pulse, applies everything queued and repaints once
+     *
+     * @param now       timestamp of the pulse in nanoseconds
+     */
+    @Override
+    public void handle(long now) {
+        if(count == 0 && !repaint) return;
+        applying = true;
+        for(int i = 0; i < count; i++) {
+            switch(types[i]) {
+                case ZOOM:  app.applyZoom(xs[i], ys[i], values[i]); break;
+                case PAN:   app.applyPan(xs[i], ys[i]); break;
+                case CLICK: app.applyClick(xs[i], ys[i]); break;
+                case DRAG:  app.applyDrag(xs[i], ys[i]); break;
+                case RELEASE: app.applyRelease(xs[i], ys[i]); break;
+            }
+        }
+        count = 0;
+        repaint = false;
+        app.repaint();
+        applying = false;
+
+        frames++;
+        lastFrameEvents = received;
+        eventsReceived += received;
+        coalesced += received - 1;
+        received = 0;
+    }
+
+    /**
+     * @return      how many repaints the pacer did
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return      how many events and repaint requests came in altogether
+     */
+    public long getEventsReceived() {
+        return eventsReceived;
+    }
+
+    /**
+     * @return      how many events got folded into a repaint another event was already getting
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return      how many events and repaint requests the last repaint covered
+     */
+    public int getLastFrameEvents() {
+        return lastFrameEvents;
+    }
+
+    /**
+     * sets the stats back to 0
+     */
+    public void resetStats() {
+        frames = 0;
+        eventsReceived = 0;
+        coalesced = 0;
+        lastFrameEvents = 0;
+    }
+
+    /**
+     * @return      stats about the pacer
+     */
+    public String toString() {
+        return "FramePacer: frames = " + frames + "  events = " + eventsReceived + "  coalesced = " + coalesced + "  last frame = " + lastFrameEvents;
+    }
+}
@@ -2,7 +2,6 @@ import javafx.scene.control.*;
 import javafx.scene.text.Font;
 import javafx.event.ActionEvent;
 import javafx.scene.paint.Color;
-import java.util.ArrayList;
 
 import javafx.application.Application;
 import javafx.scene.Scene;
@@ -30,9 +29,8 @@ public class GUI implements Drawable
     
     private Alert alert = new Alert(Alert.AlertType.NONE);
     
-    private ArrayList<Shape> shapes = new ArrayList<Shape>();
-    
     private Canvas canvas;
+    private Pane root;
     
     //buttons
     private ColorPicker colPicker;
@@ -41,6 +39,10 @@ public class GUI implements Drawable
     private Button ellipse;
     private Button undo;
     private TextField strokeField;
+    private CheckBox fastInteraction;
+    private Button select;
+    private CheckBox splitView;
+    private CheckBox mergeRects;
     private int strokeWidth;
     private Label instruction;
     
@@ -54,6 +56,7 @@ public class GUI implements Drawable
     public GUI(Canvas canvas, Pane root, MacroHardSketch app, Color bgCol) {
         pos = new Vector(0, canvas.getHeight() - this.height);
         this.canvas = canvas;
+        this.root = root;
         this.app = app;
         this.bgCol = bgCol;
         this.width = (int)canvas.getWidth();
@@ -63,25 +66,38 @@ public class GUI implements Drawable
         rectangle   = new Button("Rectangle");
         ellipse     = new Button("Ellipse");
         undo        = new Button("Undo");
+        select      = new Button("Select");
         strokeField = new TextField("5");
         strokeField.setPrefWidth(50);
-        instruction = new Label("INSTRUCTIONS:\n-Use the buttons and text field on the left to customize your drawing tool\n-The button on the right will undo the latest shape\n-The top color picker on the left is for the fill color, the other one is for the stroke color\n-The other 2 buttons select which shape to draw with\n-The textfield represents the stroke weight\n-Click once to designate the origin of the shape, click again to set the size and draw");
+        fastInteraction = new CheckBox("Fast while busy");
+        fastInteraction.setSelected(true);
+        splitView   = new CheckBox("Split view");
+        mergeRects  = new CheckBox("Merge rects");
+        instruction = new Label("INSTRUCTIONS:\n-Use the buttons and text field on the left to customize your drawing tool\n-The button on the right will undo the latest shape\n-The top color picker on the left is for the fill color, the other one is for the stroke color\n-The other 2 buttons select which shape to draw with\n-The textfield represents the stroke weight\n-Click once to designate the origin of the shape, click again to set the size and draw\n-Scroll to zoom, drag with the right mouse button to pan\n-With Select, click a shape or drag a box around shapes, then drag them to move them");
         
         backdrop = new Rectangle(new Vector(width, height), bgCol, bgCol, pos, getStrokeWidth());
         
-        root.getChildren().addAll(instruction, colPicker, strPicker, rectangle, ellipse, undo, strokeField);
+        root.getChildren().addAll(instruction, colPicker, strPicker, rectangle, ellipse, undo, select, strokeField, fastInteraction, splitView, mergeRects);
         
         colPicker   .relocate(pos.getX() + 30, pos.getY() + 30);
         strPicker   .relocate(pos.getX() + 30, pos.getY() + 90);
         rectangle   .relocate(pos.getX() + 200, pos.getY() + 30);
         ellipse     .relocate(pos.getX() + 270, pos.getY() + 30);
         undo        .relocate(canvas.getWidth() - 100, pos.getY() + 30);
+        select      .relocate(canvas.getWidth() - 170, pos.getY() + 30);
         strokeField .relocate(pos.getX() + 320, pos.getY() + 30);
+        fastInteraction.relocate(pos.getX() + 30, pos.getY() + 122);
+        splitView   .relocate(canvas.getWidth() - 100, pos.getY() + 66);
+        mergeRects  .relocate(canvas.getWidth() - 100, pos.getY() + 94);
         instruction .relocate(pos.getX() + 400, pos.getY() + 10);
         
         rectangle.setOnAction(event -> selectRect());
         ellipse.setOnAction(event -> selectEllipse());
         undo.setOnAction(event -> doUndo());
+        select.setOnAction(event -> selectSelect());
+        fastInteraction.setOnAction(event -> app.setFastInteraction(fastInteraction.isSelected()));
+        splitView.setOnAction(event -> app.setSplitView(splitView.isSelected()));
+        mergeRects.setOnAction(event -> app.setRectMerging(mergeRects.isSelected()));
     }
     
     /**
@@ -96,6 +112,16 @@ public class GUI implements Drawable
         backdrop.draw(gc);
     }
     
+    /**
+     * puts the minimap in the strip, under the shape buttons
+     * 
+     * @param minimap   the minimap to show
+     */
+    public void setMinimap(Minimap minimap) {
+        root.getChildren().add(minimap.getCanvas());
+        minimap.getCanvas().relocate(pos.getX() + 200, pos.getY() + 60 - 2);
+    }
+    
     /**
      * called when the Rectangle button is pressed
      */
@@ -110,19 +136,24 @@ public class GUI implements Drawable
         curShape = "elli";
     }
     
+    /**
+     * called when the Select button is pressed, clicks pick and move shapes instead of making them
+     */
+    public void selectSelect() {
+        curShape = "select";
+    }
+    
     /**
      * called when the Undo button is pressed. Removes the last shape.
      */
     public void doUndo() {
-        shapes = app.getShapes();
-        try{
-            shapes.remove(shapes.size()-1);   
-            app.drawEverything(canvas.getGraphicsContext2D());
-        } catch(Exception e) {
+        if(app.getShapes().isEmpty()) {
             alert.setAlertType(Alert.AlertType.WARNING);
             alert.setContentText("Nothing to undo.");
             alert.show();
+            return;
         }
+        app.undoShape();
     }
     
     /**
@@ -169,6 +200,17 @@ public class GUI implements Drawable
         }
     }
     
+    /**
+     * @return      the stroke width, 0 if the field doesn't hold a number. Doesn't complain, for previews.
+     */
+    public int peekStrokeWidth() {
+        try {
+            return Integer.parseInt(strokeField.getText());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
     /**
      * @return      the position of GUI
      * @author      Zachary Sousa
@@ -5,6 +5,7 @@ import javafx.event.ActionEvent;
 import javafx.scene.canvas.*;
 import javafx.scene.paint.Color;
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import javafx.application.Application;
 import javafx.scene.Scene;
@@ -18,7 +19,11 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.stage.Stage;
 import static javafx.application.Application.launch;
 
+import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
 
 /**
  * Homemade budget version of Microsoft Paint. Sorta.
@@ -27,12 +32,75 @@ import javafx.scene.input.MouseEvent;
  * @version     1.00
  */
 public class MacroHardSketch extends Application {
-    private Vector mousePos1 = null;
-    private Vector mousePos2 = null;
+    public static final double IDLE_MILLIS = 250;
+    public static final double CONTEXT_ZOOM_OUT = 4;
+    
+    //the two clicks that make a shape, reused for every shape
+    private final Vector mousePos1 = new Vector();
+    private final Vector mousePos2 = new Vector();
+    private boolean anchored = false;
     Alert alert = new Alert(Alert.AlertType.NONE);
     private GUI gui;
-    private ArrayList<Shape> shapes = new ArrayList<Shape>();
-    private Canvas canvas;
+    //every shape, kept as arrays of numbers rather than objects
+    private ShapeStore shapes = new ShapeStore();
+    private OverlayLayer overlay;
+    private TileCache tiles;
+    //every view draws from the same tile cache, the main one is always first
+    private ArrayList<SketchView> views = new ArrayList<SketchView>();
+    private SketchView mainView;
+    private SketchView contextView;
+    //everything that gets told about added and removed shapes
+    private ArrayList<ShapeListener> listeners = new ArrayList<ShapeListener>();
+    private RenderLoop renderLoop;
+    //null unless rectangles are being merged
+    private RectMerger merger;
+    //finds the shape under a point without looking at every shape
+    private PickIndex picker;
+    //shows the shape under the mouse
+    private Tooltip hoverTip = new Tooltip();
+    private FramePacer pacer;
+    //a view moved since the last repaint
+    private boolean viewDirty = false;
+    private double pixelScale = 1;
+    private Minimap minimap;
+    private boolean progressive = true;
+    private BackgroundRenderer background;
+    private boolean backgroundRendering = false;
+    private Pane root;
+    private double panX;
+    private double panY;
+    private SketchView panView;
+    private SketchView anchorView;
+    //selected shapes, and the view they were picked in
+    private HashSet<Shape> selection = new HashSet<Shape>();
+    private SketchView selectView;
+    //box around everything selected, in world coordinates, so a drag frame doesn't look at every shape
+    private double selX0;
+    private double selY0;
+    private double selX1;
+    private double selY1;
+    //what a primary button drag with the select tool is doing
+    private boolean boxing = false;
+    private boolean moving = false;
+    private double boxX0;
+    private double boxY0;
+    private double boxX1;
+    private double boxY1;
+    //how far the selection has been dragged, in world units
+    private double moveDX;
+    private double moveDY;
+    private double dragX;
+    private double dragY;
+    //where the mouse was last seen, for the shape preview
+    private double mouseX;
+    private double mouseY;
+    private double mouseScreenX;
+    private double mouseScreenY;
+    private boolean mouseInside = false;
+    private boolean incrementalRepaint = true;
+    private boolean fastInteraction = true;
+    private boolean interacting = false;
+    private PauseTransition idle = new PauseTransition(Duration.millis(IDLE_MILLIS));
     
     /**
      * This is where you create your components and the model and add event
@@ -43,94 +111,775 @@ public class MacroHardSketch extends Application {
      */
     @Override
     public void start(Stage stage) throws Exception {
-        Pane root = new Pane();
+        root = new Pane();
         Scene scene = new Scene(root, 900, 700);
-        canvas = new Canvas(scene.getWidth(), scene.getHeight()); // Set canvas Size in Pixels
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        root.getChildren().addAll(canvas);
+        overlay = new OverlayLayer(new Canvas(scene.getWidth(), scene.getHeight()));
 
         stage.setTitle("Macrohard Sketch Project"); // set the window title here
         stage.setScene(scene);
         
-        gui = new GUI(canvas, root, this, Color.GREY);
-        gui.draw(gc);
+        //the GUI strip is sized off the overlay, which covers the whole window
+        gui = new GUI(overlay.getCanvas(), root, this, Color.GREY);
+        overlay.setGUI(gui);
+        overlay.start();
+        tiles = new TileCache(TileCache.DEFAULT_TILE_SIZE);
+        mainView = new SketchView(scene.getWidth(), gui.getPos().getY(), tiles, shapes);
+        views.add(mainView);
+        //the overlay goes over the views but under the strip's controls, or it would hide them and take their clicks
+        root.getChildren().add(0, mainView.getCanvas());
+        root.getChildren().add(1, overlay.getCanvas());
+        renderLoop = new RenderLoop(tiles, views);
+        renderLoop.start();
+        picker = new PickIndex(shapes, PickIndex.DEFAULT_CELL_SIZE);
+        //the minimap's biggest level is half size, it only keeps tiles that have something on them
+        minimap = new Minimap(new TilePyramid(0.5, Minimap.LEVELS), shapes, picker, mainView.getViewport());
+        gui.setMinimap(minimap);
+        minimap.start();
+        listeners.add(tiles);
+        listeners.add(minimap);
+        listeners.add(mainView);
+        listeners.add(picker);
+        idle.setOnFinished(event -> endInteraction());
+        //input is queued and applied once per pulse, followed by a single repaint
+        pacer = new FramePacer(this);
+        pacer.start();
         
-        //drawing behaviors
-        canvas.addEventHandler(MouseEvent.MOUSE_PRESSED, mouse -> {
-            //get points for the shape to be drawn
-            if(mouse.getY() < gui.getPos().getY()) {
-                if(mousePos1 == null) mousePos1 = new Vector(mouse.getX(), mouse.getY());
-                else mousePos2 = new Vector(mouse.getX(), mouse.getY());
-            }
-            
-            //add shape and reset points
-            if(mousePos1 != null && mousePos2 != null) {
-                Vector origin   = new Vector(0, 0);
-                Vector siz      = Vector.sub(mousePos2, mousePos1);
-                if(siz.getX() > 0 && siz.getY() > 0) {
-                    siz = new Vector(Math.abs(siz.getX()), Math.abs(siz.getY()));
-                    origin = new Vector(mousePos1.getX(), mousePos1.getY());
-                    if(gui.getShape().equals("rect")) {
-                        shapes.add(new Rectangle(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    } else if(gui.getShape().equals("elli")) {
-                        shapes.add(new Ellipse(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    }
-                } else if(siz.getX() < 0 && siz.getY() < 0) {
-                    siz = new Vector(Math.abs(siz.getX()), Math.abs(siz.getY()));
-                    origin = new Vector(mousePos1.getX() - siz.getX(), mousePos1.getY() - siz.getY());
-                    if(gui.getShape().equals("rect")) {
-                        shapes.add(new Rectangle(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    } else if(gui.getShape().equals("elli")) {
-                        shapes.add(new Ellipse(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    }
-                } else if(siz.getX() < 0 && siz.getY() > 0) {
-                    siz = new Vector(Math.abs(siz.getX()), Math.abs(siz.getY()));
-                    origin = new Vector(mousePos1.getX() - siz.getX(), mousePos1.getY());
-                    if(gui.getShape().equals("rect")) {
-                        shapes.add(new Rectangle(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    } else if(gui.getShape().equals("elli")) {
-                        shapes.add(new Ellipse(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    }
-                } else if(siz.getX() > 0 && siz.getY() < 0) {
-                    siz = new Vector(Math.abs(siz.getX()), Math.abs(siz.getY()));
-                    origin = new Vector(mousePos1.getX(), mousePos1.getY() - siz.getY());
-                    if(gui.getShape().equals("rect")) {
-                        shapes.add(new Rectangle(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    } else if(gui.getShape().equals("elli")) {
-                        shapes.add(new Ellipse(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
-                    }
-                } else {
-                    alert.setAlertType(Alert.AlertType.WARNING);
-                    alert.setContentText("Invalid shape dimensions.");
-                    alert.show();
-                }
-                drawEverything(gc);
-                
-                mousePos1 = null;
-                mousePos2 = null;
-            }
-            
+        //zoom with the scroll wheel, pan by dragging with the right mouse button
+        overlay.getCanvas().addEventHandler(ScrollEvent.SCROLL, scroll -> {
+            if(scroll.getY() >= gui.getPos().getY() || scroll.getDeltaY() == 0) return;
+            beginInteraction();
+            pacer.zoom(scroll.getX(), scroll.getY(), scroll.getDeltaY() > 0 ? 1.25 : 0.8);
+        });
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_PRESSED, mouse -> {
+            panX = mouse.getX();
+            panY = mouse.getY();
+            //a drag pans whichever view it started in
+            panView = viewAt(panX, panY);
+        });
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_DRAGGED, mouse -> {
+            if(!mouse.isSecondaryButtonDown() && !mouse.isMiddleButtonDown()) return;
+            beginInteraction();
+            pacer.pan(mouse.getX() - panX, mouse.getY() - panY);
+            panX = mouse.getX();
+            panY = mouse.getY();
+        });
+        
+        //cursor feedback and the shape preview, only touches the overlay
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_MOVED, mouse -> {
+            mouseX = mouse.getX();
+            mouseY = mouse.getY();
+            if(mouseY < gui.getPos().getY()) overlay.setCursor(mouseX, mouseY);
+            else overlay.clearCursor();
+            mouseScreenX = mouse.getScreenX();
+            mouseScreenY = mouse.getScreenY();
+            mouseInside = true;
+            updatePreview();
+            updateHover();
+        });
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_EXITED, mouse -> {
+            mouseInside = false;
+            overlay.clearCursor();
+            updateHover();
+        });
+        
+        //drawing behaviors, the overlay is on top so it gets the clicks
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_PRESSED, mouse -> {
+            if(mouse.getButton() != MouseButton.PRIMARY) return;
+            dragX = mouse.getX();
+            dragY = mouse.getY();
+            if(!isSelecting()) beginInteraction();
+            pacer.click(mouse.getX(), mouse.getY());
+        });
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_DRAGGED, mouse -> {
+            if(!mouse.isPrimaryButtonDown() || !isSelecting()) return;
+            pacer.drag(mouse.getX() - dragX, mouse.getY() - dragY);
+            dragX = mouse.getX();
+            dragY = mouse.getY();
+        });
+        overlay.getCanvas().addEventHandler(MouseEvent.MOUSE_RELEASED, mouse -> {
+            if(mouse.getButton() != MouseButton.PRIMARY || !isSelecting()) return;
+            pacer.release(mouse.getX(), mouse.getY());
         });
         
         stage.show();
+        //draw at the screen's pixel scale, and again whenever the window moves to a screen with another one
+        setPixelScale(stage.getRenderScaleX());
+        stage.renderScaleXProperty().addListener((obs, oldScale, newScale) -> setPixelScale(newScale.doubleValue()));
+        viewportChanged();
     }
     
     /**
-     * @return      shapes ArrayList
+     * @return      every shape, bottom to top
      */
-    public ArrayList getShapes() {
+    public ShapeStore getShapes() {
         return shapes;
     }
     
     /**
-     * draws everything
+     * @param sx    x in the window
+     * @param sy    y in the window
+     * @return      the view under the point, null if it's not over one
+     */
+    public SketchView viewAt(double sx, double sy) {
+        for(int i = 0; i < views.size(); i++) {
+            if(views.get(i).contains(sx, sy)) return views.get(i);
+        }
+        return null;
+    }
+    
+    /**
+     * applies a queued zoom to the view under the point, the repaint comes after the rest of the queue
+     * 
+     * @param sx        x in the window to zoom around
+     * @param sy        y in the window to zoom around
+     * @param factor    how much to multiply the zoom by
+     */
+    public void applyZoom(double sx, double sy, double factor) {
+        SketchView v = viewAt(sx, sy);
+        if(v == null) return;
+        v.getViewport().zoom(sx - v.getX(), sy - v.getY(), factor);
+        viewportChanged(v);
+    }
+    
+    /**
+     * applies a queued pan to the view the drag started in, the repaint comes after the rest of the queue
+     * 
+     * @param dx        how far to move the view right, in screen pixels
+     * @param dy        how far to move the view down, in screen pixels
+     */
+    public void applyPan(double dx, double dy) {
+        if(panView == null) return;
+        panView.getViewport().pan(dx, dy);
+        viewportChanged(panView);
+    }
+    
+    /**
+     * applies a queued click on the drawing area. The first click sets where the
+     * shape starts, the second one sets its size and adds it. The two clicks can
+     * be in different views.
+     * 
+     * @param sx        x in the window of the click
+     * @param sy        y in the window of the click
+     */
+    public void applyClick(double sx, double sy) {
+        //get points for the shape to be drawn, in world coordinates
+        if(sy >= gui.getPos().getY()) return;
+        SketchView v = viewAt(sx, sy);
+        if(v == null) return;
+        Viewport viewport = v.getViewport();
+        if(isSelecting()) {
+            if(anchored) {
+                anchored = false;
+                overlay.clearAnchor();
+                overlay.clearPreview();
+            }
+            pick(v, sx, sy);
+            return;
+        }
+        if(!anchored) {
+            mousePos1.set(viewport.toWorldX(sx - v.getX()), viewport.toWorldY(sy - v.getY()));
+            anchored = true;
+            anchorView = v;
+            overlay.setAnchor(sx, sy);
+            updatePreview();
+            return;
+        }
+        mousePos2.set(viewport.toWorldX(sx - v.getX()), viewport.toWorldY(sy - v.getY()));
+        
+        //add shape and reset points, the shape gets the only new Vectors
+        double w = Math.abs(mousePos2.getX() - mousePos1.getX());
+        double h = Math.abs(mousePos2.getY() - mousePos1.getY());
+        if(w > 0 && h > 0) {
+            Vector siz      = new Vector(w, h);
+            Vector origin   = new Vector(Math.min(mousePos1.getX(), mousePos2.getX()), Math.min(mousePos1.getY(), mousePos2.getY()));
+            if(gui.getShape().equals("rect")) {
+                addShape(new Rectangle(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
+            } else if(gui.getShape().equals("elli")) {
+                addShape(new Ellipse(siz, gui.getCol(), gui.getStroke(), origin, gui.getStrokeWidth()));
+            }
+        } else {
+            alert.setAlertType(Alert.AlertType.WARNING);
+            alert.setContentText("Invalid shape dimensions.");
+            alert.show();
+        }
+        
+        anchored = false;
+        anchorView = null;
+        overlay.clearAnchor();
+        overlay.clearPreview();
+    }
+    
+    /**
+     * shows the shape the next click would make, from the first click to the mouse, in the
+     * current style. Only touches the overlay, so it costs the same however big the sketch is.
+     */
+    private void updatePreview() {
+        SketchView v = viewAt(mouseX, mouseY);
+        if(!anchored || v == null || mouseY >= gui.getPos().getY()) {
+            overlay.clearPreview();
+            return;
+        }
+        //the world point under the mouse, seen through the view the shape was started in
+        Viewport anchorPort = anchorView.getViewport();
+        double wx = v.getViewport().toWorldX(mouseX - v.getX());
+        double wy = v.getViewport().toWorldY(mouseY - v.getY());
+        double x0 = anchorView.getX() + anchorPort.toScreenX(Math.min(mousePos1.getX(), wx));
+        double y0 = anchorView.getY() + anchorPort.toScreenY(Math.min(mousePos1.getY(), wy));
+        double x1 = anchorView.getX() + anchorPort.toScreenX(Math.max(mousePos1.getX(), wx));
+        double y1 = anchorView.getY() + anchorPort.toScreenY(Math.max(mousePos1.getY(), wy));
+        overlay.setPreview(gui.getShape().equals("elli"), x0, y0, x1 - x0, y1 - y0, gui.getCol(), gui.getStroke(), gui.peekStrokeWidth() * anchorPort.getScale());
+    }
+    
+    /**
+     * outlines the shape under the mouse and shows what it is in a tooltip. Only looks
+     * at the shapes near the mouse, so it's cheap enough for every mouse move.
+     * Nothing gets outlined while a selection is being boxed or dragged.
+     */
+    private void updateHover() {
+        SketchView v = mouseInside && !boxing && !moving && mouseY < gui.getPos().getY() ? viewAt(mouseX, mouseY) : null;
+        int k = -1;
+        if(v != null) {
+            Viewport viewport = v.getViewport();
+            k = picker.pickIndex(viewport.toWorldX(mouseX - v.getX()), viewport.toWorldY(mouseY - v.getY()));
+        }
+        if(k < 0) {
+            overlay.clearHover();
+            hoverTip.hide();
+            return;
+        }
+        //this runs every pulse, so a shape only gets copied out of the store when the mouse gets onto it
+        Shape was = overlay.getHover();
+        Shape s = was != null && was.getId() == shapes.getId(k) ? was : shapes.get(k);
+        overlay.setHover(s, v.getViewport(), v.getX(), v.getY(), v.getViewport().getWidth(), v.getViewport().getHeight());
+        if(s != was || !hoverTip.isShowing()) {
+            hoverTip.setText(s.toString());
+            hoverTip.show(overlay.getCanvas(), mouseScreenX + 12, mouseScreenY + 12);
+        } else if(hoverTip.getAnchorX() != mouseScreenX + 12 || hoverTip.getAnchorY() != mouseScreenY + 12) {
+            //moving a popup allocates even when it's to the same spot
+            hoverTip.setAnchorX(mouseScreenX + 12);
+            hoverTip.setAnchorY(mouseScreenY + 12);
+        }
+    }
+    
+    /**
+     * @return      true if the select tool is picked, clicks select and move shapes then
+     */
+    private boolean isSelecting() {
+        return gui.getShape().equals("select");
+    }
+    
+    /**
+     * handles a click with the select tool. Clicking a selected shape gets ready to move the
+     * selection, clicking another shape selects just it, and clicking nothing starts a box.
+     */
+    private void pick(SketchView v, double sx, double sy) {
+        Viewport viewport = v.getViewport();
+        double wx = viewport.toWorldX(sx - v.getX());
+        double wy = viewport.toWorldY(sy - v.getY());
+        Shape hit = picker.pick(wx, wy);
+        selectView = v;
+        moveDX = 0;
+        moveDY = 0;
+        if(hit != null) {
+            if(!selection.contains(hit)) {
+                selection.clear();
+                selection.add(hit);
+            }
+            moving = true;
+            measureSelection();
+            showSelection();
+        } else {
+            selection.clear();
+            boxing = true;
+            boxX0 = boxX1 = wx;
+            boxY0 = boxY1 = wy;
+            overlay.setSelection(sx, sy, 0, 0);
+        }
+        updateHover();
+    }
+    
+    /**
+     * applies a queued drag with the select tool, either growing the selection box or moving
+     * the selection. The first move lifts the selection in every view, after that a frame is
+     * two picture copies per view however many shapes are selected.
+     * 
+     * @param dx        how far the mouse moved right, in screen pixels
+     * @param dy        how far the mouse moved down, in screen pixels
+     */
+    public void applyDrag(double dx, double dy) {
+        if(selectView == null) return;
+        double scale = selectView.getViewport().getScale();
+        if(boxing) {
+            boxX1 += dx / scale;
+            boxY1 += dy / scale;
+            showBox();
+        } else if(moving && !selection.isEmpty()) {
+            if(!selectView.isLifted()) {
+                for(int i = 0; i < views.size(); i++) views.get(i).lift(selection);
+            }
+            moveDX += dx / scale;
+            moveDY += dy / scale;
+            for(int i = 0; i < views.size(); i++) views.get(i).setLiftOffset(moveDX, moveDY);
+            showSelection();
+            pacer.requestRepaint();
+        }
+    }
+    
+    /**
+     * applies a queued release with the select tool. A box selects every shape inside it, a
+     * moved selection gets its positions changed once, here, and the views put it back down.
+     * 
+     * @param sx        screen x where the button was let go
+     * @param sy        screen y where the button was let go
+     */
+    public void applyRelease(double sx, double sy) {
+        if(boxing) {
+            boxing = false;
+            double x0 = Math.min(boxX0, boxX1);
+            double y0 = Math.min(boxY0, boxY1);
+            double x1 = Math.max(boxX0, boxX1);
+            double y1 = Math.max(boxY0, boxY1);
+            for(int i = 0; i < shapes.size(); i++) {
+                if(!shapes.intersects(i, x0, y0, x1 - x0, y1 - y0)) continue;
+                if(shapes.getMinX(i) >= x0 && shapes.getMaxX(i) <= x1 && shapes.getMinY(i) >= y0 && shapes.getMaxY(i) <= y1) selection.add(shapes.get(i));
+            }
+            measureSelection();
+            showSelection();
+        } else if(moving) {
+            moving = false;
+            if(selectView != null && selectView.isLifted()) {
+                moveSelection(moveDX, moveDY);
+                for(int i = 0; i < views.size(); i++) views.get(i).drop();
+                moveDX = 0;
+                moveDY = 0;
+                showSelection();
+                pacer.requestRepaint();
+            }
+        }
+        updateHover();
+    }
+    
+    /**
+     * moves every selected shape and tells the caches and views which shapes moved and how far,
+     * along with the box they were in
+     */
+    private void moveSelection(double dx, double dy) {
+        if(dx == 0 && dy == 0) return;
+        //the selection holds copies, so each one gets written back to the store
+        for(Shape s : selection) {
+            s.pos.set(s.pos.getX() + dx, s.pos.getY() + dy);
+            shapes.set(shapes.indexOf(s), s);
+        }
+        //the outline under the mouse is a copy too, it gets picked again where the shape is now
+        overlay.clearHover();
+        for(int i = 0; i < listeners.size(); i++) listeners.get(i).shapesMoved(selection, selX0, selY0, selX1 - selX0, selY1 - selY0, dx, dy);
+        selX0 += dx;
+        selY0 += dy;
+        selX1 += dx;
+        selY1 += dy;
+    }
+    
+    /**
+     * puts the dashed box around the selection, dragged along while it's being moved
+     */
+    private void showSelection() {
+        if(selection.isEmpty() || selectView == null) {
+            overlay.clearSelection();
+            return;
+        }
+        Viewport viewport = selectView.getViewport();
+        double sx = selectView.getX() + viewport.toScreenX(selX0 + moveDX);
+        double sy = selectView.getY() + viewport.toScreenY(selY0 + moveDY);
+        overlay.setSelection(sx, sy, (selX1 - selX0) * viewport.getScale(), (selY1 - selY0) * viewport.getScale());
+    }
+    
+    /**
+     * works out the box around everything selected, call it whenever the selection changes
+     */
+    private void measureSelection() {
+        selX0 = Double.MAX_VALUE;
+        selY0 = Double.MAX_VALUE;
+        selX1 = -Double.MAX_VALUE;
+        selY1 = -Double.MAX_VALUE;
+        for(Shape s : selection) {
+            selX0 = Math.min(selX0, s.getMinX());
+            selY0 = Math.min(selY0, s.getMinY());
+            selX1 = Math.max(selX1, s.getMaxX());
+            selY1 = Math.max(selY1, s.getMaxY());
+        }
+    }
+    
+    /**
+     * puts the dashed box where the selection box is being dragged out
+     */
+    private void showBox() {
+        Viewport viewport = selectView.getViewport();
+        double x0 = Math.min(boxX0, boxX1);
+        double y0 = Math.min(boxY0, boxY1);
+        overlay.setSelection(selectView.getX() + viewport.toScreenX(x0), selectView.getY() + viewport.toScreenY(y0),
+            Math.abs(boxX1 - boxX0) * viewport.getScale(), Math.abs(boxY1 - boxY0) * viewport.getScale());
+    }
+    
+    /**
+     * @return      the selected shapes
+     */
+    public HashSet<Shape> getSelection() {
+        return selection;
+    }
+    
+    /**
+     * adds a shape to the sketch. It gets painted on the next pulse, and since a new
+     * shape is always on top only its own area needs painting, so this costs the same
+     * no matter how many shapes there already are.
+     * 
+     * @param s     the shape to add
+     */
+    public void addShape(Shape s) {
+        shapes.add(s);
+        for(int i = 0; i < listeners.size(); i++) listeners.get(i).shapeAdded(s);
+        pacer.requestRepaint();
+    }
+    
+    /**
+     * removes the newest shape, only the area it covered gets repainted on the next pulse
+     * 
+     * @return      the removed shape
+     * @throws IndexOutOfBoundsException if there are no shapes
+     */
+    public Shape undoShape() {
+        Shape s = shapes.remove(shapes.size() - 1);
+        if(selection.remove(s)) {
+            measureSelection();
+            showSelection();
+        }
+        for(int i = 0; i < listeners.size(); i++) listeners.get(i).shapeRemoved(s);
+        pacer.requestRepaint();
+        return s;
+    }
+    
+    /**
+     * @param l     something to tell about every shape added or removed from now on
+     */
+    public void addShapeListener(ShapeListener l) {
+        listeners.add(l);
+    }
+    
+    /**
+     * @param l     a listener to stop telling about shapes
+     */
+    public void removeShapeListener(ShapeListener l) {
+        listeners.remove(l);
+    }
+    
+    /**
+     * brings every view up to date with everything that changed since the last pulse.
+     * Called by the FramePacer once per pulse at most.
+     */
+    public void repaint() {
+        for(int i = 0; i < views.size(); i++) {
+            SketchView v = views.get(i);
+            if(v == mainView && backgroundRendering) {
+                background.requestFrame(shapes, v.getViewport());
+                //it's hidden, so it just catches up all at once when it's shown again
+                v.viewChanged();
+            } else {
+                v.repaint();
+            }
+        }
+        if(viewDirty) {
+            viewDirty = false;
+            minimap.markDirty();
+            overlay.markDirty();
+            if(anchored) overlay.setAnchor(anchorView.getX() + anchorView.getViewport().toScreenX(mousePos1.getX()), anchorView.getY() + anchorView.getViewport().toScreenY(mousePos1.getY()));
+            updatePreview();
+            if(boxing) showBox();
+            else showSelection();
+        }
+        //a zoom, pan, move or undo can change what's under a mouse that didn't move
+        updateHover();
+    }
+    
+    /**
+     * called on input that changes the drawing. Switches to fast quality if it isn't already,
+     * and pushes back going back to full quality until the input has stopped for IDLE_MILLIS.
+     */
+    private void beginInteraction() {
+        if(!fastInteraction) return;
+        if(!interacting) {
+            interacting = true;
+            tiles.setFastQuality(true);
+            if(background != null) background.setDraft(true);
+        }
+        idle.playFromStart();
+    }
+    
+    /**
+     * goes back to full quality and redraws whatever was drawn in fast quality
+     */
+    private void endInteraction() {
+        idle.stop();
+        if(!interacting) return;
+        interacting = false;
+        tiles.setFastQuality(false);
+        if(background != null) background.setDraft(false);
+        drawEverything();
+    }
+    
+    /**
+     * @param fast      true to draw in fast quality while the user is clicking, zooming or panning
+     */
+    public void setFastInteraction(boolean fast) {
+        fastInteraction = fast;
+        if(!fast) endInteraction();
+    }
+    
+    /**
+     * @return      true if fast quality gets used while the user is busy
+     */
+    public boolean isFastInteraction() {
+        return fastInteraction;
+    }
+    
+    /**
+     * @param incremental   true to only repaint damaged areas, false to redraw everything
+     */
+    public void setIncrementalRepaint(boolean incremental) {
+        incrementalRepaint = incremental;
+        for(int i = 0; i < views.size(); i++) views.get(i).setIncrementalRepaint(incremental);
+    }
+    
+    /**
+     * @param progressive   true to spread repaints over several pulses, false to finish them right away
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+        for(int i = 0; i < views.size(); i++) views.get(i).setProgressive(progressive);
+    }
+    
+    /**
+     * @return      the render loop that does progressive repaints
+     */
+    public RenderLoop getRenderLoop() {
+        return renderLoop;
+    }
+    
+    /**
+     * splits the drawing area in two. The main view gets the left half and the right
+     * half shows the same spot zoomed out CONTEXT_ZOOM_OUT times, with its own zoom
+     * and pan from then on. Both draw from the same tile cache, so tiles either of
+     * them drew are there for the other at the same zoom.
+     * 
+     * @param on    true to split, false to go back to one view
+     */
+    public void setSplitView(boolean on) {
+        if(on == (contextView != null)) return;
+        double w = overlay.getCanvas().getWidth();
+        double h = gui.getPos().getY();
+        if(on) {
+            double half = Math.floor(w / 2);
+            mainView.setBounds(0, 0, half, h);
+            contextView = new SketchView(w - half, h, tiles, shapes);
+            contextView.getCanvas().relocate(half, 0);
+            contextView.setProgressive(progressive);
+            contextView.setIncrementalRepaint(incrementalRepaint);
+            if(merger != null) contextView.setDrawList(merger.getShapes());
+            //same middle as the main view, zoomed out
+            Viewport main = mainView.getViewport();
+            Viewport context = contextView.getViewport();
+            double cx = main.toWorldX(main.getWidth() / 2);
+            double cy = main.toWorldY(main.getHeight() / 2);
+            context.zoom(0, 0, main.getScale() / CONTEXT_ZOOM_OUT);
+            context.pan(context.getWidth() / 2 - cx * context.getScale(), context.getHeight() / 2 - cy * context.getScale());
+            root.getChildren().add(root.getChildren().indexOf(mainView.getCanvas()) + 1, contextView.getCanvas());
+            views.add(contextView);
+            listeners.add(contextView);
+        } else {
+            views.remove(contextView);
+            listeners.remove(contextView);
+            root.getChildren().remove(contextView.getCanvas());
+            if(panView == contextView) panView = null;
+            if(anchorView == contextView) anchorView = mainView;
+            if(selectView == contextView) selectView = mainView;
+            contextView = null;
+            mainView.setBounds(0, 0, w, h);
+        }
+        //the background renderer is the main view's size
+        if(background != null) rebuildBackground();
+        viewportChanged();
+    }
+    
+    /**
+     * turns on or off drawing runs of same styled rectangles that touch as one fill and one
+     * stroke. The sketch keeps every rectangle on its own either way, so undo isn't affected.
+     * Turning it on says how many draw calls it saves on this document.
+     * 
+     * @param on    true to merge rectangles
+     */
+    public void setRectMerging(boolean on) {
+        if(on == (merger != null)) return;
+        if(on) {
+            merger = new RectMerger(shapes);
+            listeners.add(merger);
+            alert.setAlertType(Alert.AlertType.INFORMATION);
+            alert.setContentText(merger.toString());
+            alert.show();
+        } else {
+            listeners.remove(merger);
+            merger = null;
+        }
+        for(int i = 0; i < views.size(); i++) views.get(i).setDrawList(on ? merger.getShapes() : shapes);
+        tiles.invalidateAll();
+        viewportChanged();
+    }
+    
+    /**
+     * @return      the index used to find the shape under the mouse
+     */
+    public PickIndex getPickIndex() {
+        return picker;
+    }
+    
+    /**
+     * @return      the rectangle merger, null if merging is off
+     */
+    public RectMerger getRectMerger() {
+        return merger;
+    }
+    
+    /**
+     * @return      true if the drawing area is split into two views
+     */
+    public boolean isSplitView() {
+        return contextView != null;
+    }
+    
+    /**
+     * switches between drawing shapes on the JavaFX thread through the tile cache, and
+     * drawing them on a background thread into a PixelBuffer. The tile cache keeps
+     * getting invalidated either way so switching back is safe. Only the main view
+     * can be drawn in the background.
+     * 
+     * @param on    true to draw on the background thread
+     */
+    public void setBackgroundRendering(boolean on) {
+        if(on && background == null) {
+            Canvas canvas = mainView.getCanvas();
+            background = new BackgroundRenderer((int)canvas.getWidth(), (int)canvas.getHeight(), pixelScale);
+            root.getChildren().add(root.getChildren().indexOf(canvas) + 1, background.getView());
+        }
+        backgroundRendering = on;
+        mainView.getCanvas().setVisible(!on);
+        if(background != null) background.getView().setVisible(on);
+        drawEverything();
+    }
+    
+    /**
+     * replaces the background renderer with one at the main view's current size and pixel scale
+     */
+    private void rebuildBackground() {
+        Canvas canvas = mainView.getCanvas();
+        int i = root.getChildren().indexOf(background.getView());
+        background.shutdown();
+        background = new BackgroundRenderer((int)canvas.getWidth(), (int)canvas.getHeight(), pixelScale);
+        root.getChildren().set(i, background.getView());
+        background.getView().setVisible(backgroundRendering);
+    }
+    
+    /**
+     * sets how many screen pixels there are per canvas unit and repaints at that scale on
+     * the next pulse. Only what's on screen gets drawn again.
+     * 
+     * @param scale     the screen's output scale, 2 on a typical HiDPI display
+     */
+    public void setPixelScale(double scale) {
+        if(scale == pixelScale) return;
+        pixelScale = scale;
+        tiles.setPixelScale(scale);
+        minimap.setPixelScale(scale);
+        if(background != null) rebuildBackground();
+        //tiles at the old pixel scale get redrawn as they're copied, the rest are still good
+        viewportChanged();
+    }
+    
+    /**
+     * @return      the background renderer, null if it was never turned on
+     */
+    public BackgroundRenderer getBackgroundRenderer() {
+        return background;
+    }
+    
+    /**
+     * redraws every view on the next pulse
+     */
+    public void viewportChanged() {
+        for(int i = 0; i < views.size(); i++) views.get(i).viewChanged();
+        viewDirty = true;
+        pacer.requestRepaint();
+    }
+    
+    /**
+     * redraws one view after a zoom or pan on the next pulse. Tiles it already has at
+     * that zoom just get copied, only newly uncovered ones get drawn.
+     * 
+     * @param v     the view that moved
+     */
+    private void viewportChanged(SketchView v) {
+        v.viewChanged();
+        viewDirty = true;
+        pacer.requestRepaint();
+    }
+    
+    /**
+     * @return      the main view's viewport, the one the minimap shows
+     */
+    public Viewport getViewport() {
+        return mainView.getViewport();
+    }
+    
+    /**
+     * @return      the view on the left, or the only one if the area isn't split
+     */
+    public SketchView getMainView() {
+        return mainView;
+    }
+    
+    /**
+     * @return      the zoomed out view on the right, null if the area isn't split
+     */
+    public SketchView getContextView() {
+        return contextView;
+    }
+    
+    /**
+     * @return      the pacer that queues input and repaints once per pulse, has the coalescing stats
+     */
+    public FramePacer getPacer() {
+        return pacer;
+    }
+    
+    /**
+     * @return      the minimap in the GUI strip
+     */
+    public Minimap getMinimap() {
+        return minimap;
+    }
+    
+    /**
+     * @return      the tile cache every view draws from
+     */
+    public TileCache getTileCache() {
+        return tiles;
+    }
+    
+    /**
+     * draws everything. The GUI lives on the overlay, so it just gets flagged for the next pulse.
      */
-    public void drawEverything(GraphicsContext gc) {
-        new Rectangle(new Vector(canvas.getWidth(), canvas.getHeight()), Color.WHITE, Color.WHITE, new Vector(0, 0), gui.getStrokeWidth()).draw(gc);
-        for(Shape s : shapes) {
-            s.draw(gc);
+    public void drawEverything() {
+        if(backgroundRendering) background.requestFrame(shapes, mainView.getViewport());
+        for(int i = 0; i < views.size(); i++) {
+            if(views.get(i) != mainView || !backgroundRendering) views.get(i).drawEverything();
         }
-        gui.draw(gc);
+        overlay.markDirty();
     }
 
     /**
@@ -0,0 +1,247 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Small overview of the document that sits in the GUI strip, with a box
+ * showing which part the drawing area is looking at. The document has no
+ * edges, so the minimap shows everything that's been drawn on plus the part
+ * on screen, shrunk to fit. The picture comes from whichever level of a
+ * TilePyramid is closest to that size, so keeping it up to date never means
+ * drawing the whole document again. It repaints on a pulse only when the
+ * pyramid or the view changed.
+ *
+ * Adding a shape can only grow the drawn on part. Taking one away or moving
+ * some only matters when they touched its edge, and then the new edges come
+ * from the PickIndex, which only looks at its outermost cells.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class Minimap extends AnimationTimer implements ShapeListener
+{
+    public static final int WIDTH = 144;
+    public static final int HEIGHT = 88;
+    public static final int LEVELS = 12;
+
+    private final Canvas canvas = new Canvas(WIDTH, HEIGHT);
+    private final TilePyramid pyramid;
+    private final List<Shape> shapes;
+    private final PickIndex index;
+    private final Viewport viewport;
+    //the part of the world with shapes on it
+    private final DirtyRegion extent = new DirtyRegion();
+    private boolean extentDirty = false;
+    private final double[] bounds = new double[4];
+    private double pixelScale = 1;
+    private WritableImage image;
+    private int[] pixels;
+    private boolean imageDirty = true;
+    private boolean dirty = true;
+    //the world box the image was last made for
+    private double shownX;
+    private double shownY;
+    private double shownUnits;
+
+    /**
+     * Constructor for Minimap
+     *
+     * @param pyramid   the pyramid to read the overview from
+     * @param shapes    all shapes, bottom to top
+     * @param index     a pick index over the same shapes
+     * @param viewport  the drawing area's viewport, shown as a box
+     */
+    public Minimap(TilePyramid pyramid, List<Shape> shapes, PickIndex index, Viewport viewport) {
+        this.pyramid = pyramid;
+        this.shapes = shapes;
+        this.index = index;
+        this.viewport = viewport;
+        for(int i = 0; i < shapes.size(); i++) shapeAdded(shapes.get(i));
+        setPixelScale(1);
+    }
+
+    /**
+     * makes the image big enough for the screen's pixel scale, a 2x screen gets one twice as big
+     *
+     * @param pixelScale    screen pixels per unit
+     */
+    public void setPixelScale(double pixelScale) {
+        this.pixelScale = pixelScale;
+        int w = (int)Math.ceil(WIDTH * pixelScale);
+        int h = (int)Math.ceil(HEIGHT * pixelScale);
+        image = new WritableImage(w, h);
+        pixels = new int[w * h];
+        imageDirty = true;
+        dirty = true;
+    }
+
+    /**
+     * called by JavaFX once per pulse, brings the pyramid up to date and repaints if anything changed
+     *
+     * @param now       timestamp of the pulse in nanoseconds
+     */
+    @Override
+    public void handle(long now) {
+        if(pyramid.isDirty()) {
+            pyramid.update(shapes, index);
+            imageDirty = true;
+        }
+        if(extentDirty) {
+            //something on the edge went or moved, so the edges have to be found again
+            extentDirty = false;
+            extent.clear();
+            if(index.getBounds(bounds)) extent.add(bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+            dirty = true;
+        }
+        if(!dirty && !imageDirty) return;
+        dirty = false;
+        draw(canvas.getGraphicsContext2D());
+    }
+
+    /**
+     * draws the overview and the view box
+     *
+     * @param gc    GraphicsContext of the minimap canvas
+     */
+    public void draw(GraphicsContext gc) {
+        double vx0 = viewport.toWorldX(0);
+        double vy0 = viewport.toWorldY(0);
+        double vx1 = viewport.toWorldX(viewport.getWidth());
+        double vy1 = viewport.toWorldY(viewport.getHeight());
+
+        //fit what's drawn and what's on screen, centered
+        double x0 = vx0, y0 = vy0, x1 = vx1, y1 = vy1;
+        if(!extent.isEmpty()) {
+            x0 = Math.min(x0, extent.getX());
+            y0 = Math.min(y0, extent.getY());
+            x1 = Math.max(x1, extent.getX() + extent.getWidth());
+            y1 = Math.max(y1, extent.getY() + extent.getHeight());
+        }
+        double units = Math.max((x1 - x0) / WIDTH, (y1 - y0) / HEIGHT);
+        double ox = (x0 + x1) / 2 - units * WIDTH / 2;
+        double oy = (y0 + y1) / 2 - units * HEIGHT / 2;
+
+        if(imageDirty || ox != shownX || oy != shownY || units != shownUnits) {
+            imageDirty = false;
+            shownX = ox;
+            shownY = oy;
+            shownUnits = units;
+            int w = (int)image.getWidth();
+            int h = (int)image.getHeight();
+            double perPixel = units * WIDTH / w;
+            pyramid.render(pyramid.levelFor(perPixel), ox, oy, perPixel, pixels, w, h);
+            image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbPreInstance(), pixels, 0, w);
+        }
+        gc.drawImage(image, 0, 0, WIDTH, HEIGHT);
+
+        double bx0 = (vx0 - ox) / units;
+        double by0 = (vy0 - oy) / units;
+        double bx1 = (vx1 - ox) / units;
+        double by1 = (vy1 - oy) / units;
+        gc.setLineWidth(1);
+        gc.setStroke(Color.RED);
+        gc.strokeRect(Math.round(bx0) + 0.5, Math.round(by0) + 0.5, Math.max(0, Math.round(bx1 - bx0) - 1), Math.max(0, Math.round(by1 - by0) - 1));
+        gc.setStroke(Color.BLACK);
+        gc.strokeRect(0.5, 0.5, WIDTH - 1, HEIGHT - 1);
+    }
+
+    /**
+     * @param s     the shape that was added
+     */
+    public void shapeAdded(Shape s) {
+        invalidate(s);
+        grow(s);
+    }
+
+    /**
+     * @param x     left edge of the changed area in world coordinates
+     * @param y     top edge of the changed area in world coordinates
+     * @param w     width of the changed area
+     * @param h     height of the changed area
+     */
+    public void shapesChanged(double x, double y, double w, double h) {
+        pyramid.invalidate(x, y, w, h);
+        checkEdge(x, y, x + w, y + h);
+    }
+
+    /**
+     * same as the two boxes shapesChanged would get, but only the shapes' own boxes can
+     * touch the edge, not the whole box around them
+     *
+     * @param moved     the shapes, already at their new spot
+     * @param x         left edge of the box around them before the move
+     * @param y         top edge of that box
+     * @param w         width of that box
+     * @param h         height of that box
+     * @param dx        how far they moved right
+     * @param dy        how far they moved down
+     */
+    public void shapesMoved(Collection<Shape> moved, double x, double y, double w, double h, double dx, double dy) {
+        pyramid.invalidate(x, y, w, h);
+        pyramid.invalidate(x + dx, y + dy, w, h);
+        for(Shape s : moved) {
+            checkEdge(s.getMinX() - dx, s.getMinY() - dy, s.getMaxX() - dx, s.getMaxY() - dy);
+            grow(s);
+        }
+    }
+
+    /**
+     * the drawn on part has to be worked out again if a box that had shapes in it reaches
+     * its edge, anything further in can't change it
+     */
+    private void checkEdge(double x0, double y0, double x1, double y1) {
+        if(extent.isEmpty()) return;
+        if(x0 > extent.getX() && y0 > extent.getY() && x1 < extent.getX() + extent.getWidth() && y1 < extent.getY() + extent.getHeight()) return;
+        extentDirty = true;
+    }
+
+    /**
+     * makes the drawn on part of the world big enough to hold a shape
+     */
+    private void grow(Shape s) {
+        extent.add(s.getMinX(), s.getMinY(), s.getMaxX() - s.getMinX(), s.getMaxY() - s.getMinY());
+    }
+
+    /**
+     * @param s     the shape that was removed
+     */
+    public void shapeRemoved(Shape s) {
+        invalidate(s);
+        checkEdge(s.getMinX(), s.getMinY(), s.getMaxX(), s.getMaxY());
+    }
+
+    /**
+     * marks the tiles a shape touches as out of date, the minimap catches up on the next pulse
+     *
+     * @param s     the shape that was added or removed
+     */
+    public void invalidate(Shape s) {
+        pyramid.invalidate(s);
+    }
+
+    /**
+     * asks for a repaint on the next pulse, e.g. after the view moved
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * @return      the minimap canvas
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * @return      the pyramid behind the minimap
+     */
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Finds shapes that are completely buried under opaque shapes drawn after
+ * them, so they can be skipped. It walks the shapes top to bottom, keeping a
+ * list of solid boxes seen so far, and hides any shape whose painted area
+ * (stroke and anti-aliasing included) fits inside one of those boxes.
+ *
+ * Only fully opaque fills count as solid, a see-through color never hides
+ * anything. Boxes are shrunk by a pixel first since their anti-aliased edges
+ * let a little of what's underneath through.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class OcclusionCuller
+{
+    //only the biggest boxes are kept, checking every one would cost more than drawing
+    private static final int MAX_OCCLUDERS = 32;
+
+    private double[] minX = new double[MAX_OCCLUDERS];
+    private double[] minY = new double[MAX_OCCLUDERS];
+    private double[] maxX = new double[MAX_OCCLUDERS];
+    private double[] maxY = new double[MAX_OCCLUDERS];
+    private int count = 0;
+    private double[] box = new double[4];
+    private BitSet hidden = new BitSet();
+
+    //stats
+    private long culled;
+
+    /**
+     * works out which shapes are hidden inside an area
+     *
+     * @param shapes    all shapes, bottom to top
+     * @param x         left edge of the area
+     * @param y         top edge of the area
+     * @param w         width of the area
+     * @param h         height of the area
+     * @param pixel     size of one screen pixel in the same units as the shapes
+     */
+    public void compute(List<Shape> shapes, double x, double y, double w, double h, double pixel) {
+        hidden.clear();
+        count = 0;
+        for(int k = shapes.size() - 1; k >= 0; k--) {
+            if(!ShapeStore.intersects(shapes, k, x, y, w, h)) continue;
+
+            //only the part inside the area has to be covered
+            double x0 = Math.max(ShapeStore.getMinX(shapes, k), x);
+            double y0 = Math.max(ShapeStore.getMinY(shapes, k), y);
+            double x1 = Math.min(ShapeStore.getMaxX(shapes, k), x + w);
+            double y1 = Math.min(ShapeStore.getMaxY(shapes, k), y + h);
+            if(isCovered(x0, y0, x1, y1)) {
+                hidden.set(k);
+                culled++;
+                continue;
+            }
+
+            if(ShapeStore.getSolidArea(shapes, k, box)) addOccluder(box[0] + pixel, box[1] + pixel, box[2] - pixel, box[3] - pixel);
+        }
+    }
+
+    /**
+     * @param index     position of the shape in the list given to compute
+     * @return          true if the shape can be skipped
+     */
+    public boolean isHidden(int index) {
+        return hidden.get(index);
+    }
+
+    /**
+     * @return      true if the box is inside one of the solid boxes
+     */
+    private boolean isCovered(double x0, double y0, double x1, double y1) {
+        for(int i = 0; i < count; i++) {
+            if(x0 >= minX[i] && y0 >= minY[i] && x1 <= maxX[i] && y1 <= maxY[i]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * keeps a solid box, pushing out the smallest one if the list is full
+     */
+    private void addOccluder(double x0, double y0, double x1, double y1) {
+        if(x1 <= x0 || y1 <= y0) return;
+        int slot = count;
+        if(count == MAX_OCCLUDERS) {
+            slot = 0;
+            for(int i = 1; i < count; i++) {
+                if(area(i) < area(slot)) slot = i;
+            }
+            if(area(slot) >= (x1 - x0) * (y1 - y0)) return;
+        } else {
+            count++;
+        }
+        minX[slot] = x0;
+        minY[slot] = y0;
+        maxX[slot] = x1;
+        maxY[slot] = y1;
+    }
+
+    private double area(int i) {
+        return (maxX[i] - minX[i]) * (maxY[i] - minY[i]);
+    }
+
+    /**
+     * @return      how many shapes were found hidden since the last reset
+     */
+    public long getCulled() {
+        return culled;
+    }
+
+    /**
+     * sets the stats back to 0
+     */
+    public void resetStats() {
+        culled = 0;
+    }
+}
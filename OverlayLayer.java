@@ -0,0 +1,313 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * The light canvas that sits on top of the shapes. It holds the GUI strip,
+ * the cursor feedback, the preview of the shape being drawn, the outline of
+ * the shape under the mouse and anything else that changes a lot, so none
+ * of that ever makes the shape layer redraw. It only repaints on a frame
+ * where something on it actually changed, at most once per JavaFX pulse
+ * (60 Hz).
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class OverlayLayer extends AnimationTimer
+{
+    private Canvas canvas;
+    private GUI gui;
+    private boolean dirty = true;
+
+    //cursor feedback
+    private boolean hasCursor = false;
+    private double cursorX;
+    private double cursorY;
+    private boolean hasAnchor = false;
+    private double anchorX;
+    private double anchorY;
+    //the shape that the next click would make
+    private boolean hasPreview = false;
+    private boolean previewOval;
+    private double previewX;
+    private double previewY;
+    private double previewW;
+    private double previewH;
+    private Color previewFill;
+    private Color previewBorder;
+    private double previewLineWidth;
+    //box around the selection, or the box being dragged out to select with
+    private boolean hasSelection = false;
+    private double selectionX;
+    private double selectionY;
+    private double selectionW;
+    private double selectionH;
+    //the shape under the mouse, outlined through the viewport of the view it's in
+    private Shape hover = null;
+    private Viewport hoverPort;
+    private double hoverX;
+    private double hoverY;
+    private double hoverW;
+    private double hoverH;
+
+    /**
+     * Constructor for OverlayLayer
+     *
+     * @param canvas    the overlay canvas, stacked above the shape canvas
+     */
+    public OverlayLayer(Canvas canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * @param gui       the GUI to draw in the strip at the bottom
+     */
+    public void setGUI(GUI gui) {
+        this.gui = gui;
+        markDirty();
+    }
+
+    /**
+     * called by JavaFX once per pulse, repaints if anything changed
+     *
+     * @param now       timestamp of the pulse in nanoseconds
+     */
+    @Override
+    public void handle(long now) {
+        if(!dirty) return;
+        dirty = false;
+        draw(canvas.getGraphicsContext2D());
+    }
+
+    /**
+     * draws the overlay from scratch, it's cheap enough that there's no point tracking what changed
+     *
+     * @param gc    GraphicsContext of the overlay canvas
+     */
+    public void draw(GraphicsContext gc) {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if(gui != null) gui.draw(gc);
+
+        if(hover != null) drawHover(gc);
+        if(hasPreview) drawPreview(gc);
+
+        gc.setLineWidth(1);
+        if(hasSelection) {
+            gc.setStroke(Color.DODGERBLUE);
+            gc.setLineDashes(4);
+            gc.strokeRect(selectionX + 0.5, selectionY + 0.5, selectionW, selectionH);
+            gc.setLineDashes(null);
+        }
+        if(hasAnchor) {
+            gc.setStroke(Color.BLACK);
+            gc.strokeRect(anchorX - 3.5, anchorY - 3.5, 7, 7);
+        }
+        if(hasCursor) {
+            gc.setStroke(Color.GREY);
+            gc.strokeLine(cursorX - 6, cursorY + 0.5, cursorX + 7, cursorY + 0.5);
+            gc.strokeLine(cursorX + 0.5, cursorY - 6, cursorX + 0.5, cursorY + 7);
+        }
+    }
+
+    /**
+     * draws the pending shape, kept out of the GUI strip
+     */
+    private void drawPreview(GraphicsContext gc) {
+        gc.save();
+        gc.beginPath();
+        gc.rect(0, 0, canvas.getWidth(), gui == null ? canvas.getHeight() : gui.getPos().getY());
+        gc.clip();
+        gc.setFill(previewFill);
+        if(previewOval) gc.fillOval(previewX, previewY, previewW, previewH);
+        else gc.fillRect(previewX, previewY, previewW, previewH);
+        if(previewLineWidth > 0) {
+            gc.setLineWidth(previewLineWidth);
+            gc.setStroke(previewBorder);
+            if(previewOval) gc.strokeOval(previewX, previewY, previewW, previewH);
+            else gc.strokeRect(previewX, previewY, previewW, previewH);
+        }
+        gc.restore();
+    }
+
+    /**
+     * outlines the shape under the mouse, kept inside its view and out of the GUI strip
+     */
+    private void drawHover(GraphicsContext gc) {
+        gc.save();
+        double clipH = Math.min(hoverH, (gui == null ? canvas.getHeight() : gui.getPos().getY()) - hoverY);
+        //a clip copies the whole path, so it's only set when the outline crosses the edge
+        if(hoverPort.toScreenX(hover.getMinX()) - 1 < 0 || hoverPort.toScreenY(hover.getMinY()) - 1 < 0
+            || hoverPort.toScreenX(hover.getMaxX()) + 1 > hoverW || hoverPort.toScreenY(hover.getMaxY()) + 1 > clipH) {
+            gc.beginPath();
+            gc.rect(hoverX, hoverY, hoverW, clipH);
+            gc.clip();
+        }
+        gc.translate(hoverX, hoverY);
+        hoverPort.apply(gc);
+        gc.beginPath();
+        hover.appendPath(gc);
+        //2 pixels wide at any zoom
+        gc.setLineWidth(2 / hoverPort.getScale());
+        gc.setStroke(Color.ORANGE);
+        gc.stroke();
+        gc.restore();
+    }
+
+    /**
+     * asks for a repaint on the next pulse
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * moves the cursor feedback
+     *
+     * @param x     cursor x
+     * @param y     cursor y
+     */
+    public void setCursor(double x, double y) {
+        hasCursor = true;
+        cursorX = Math.floor(x);
+        cursorY = Math.floor(y);
+        markDirty();
+    }
+
+    /**
+     * hides the cursor feedback
+     */
+    public void clearCursor() {
+        if(!hasCursor) return;
+        hasCursor = false;
+        markDirty();
+    }
+
+    /**
+     * marks the first click of a shape that is being drawn
+     *
+     * @param x     x of the first click
+     * @param y     y of the first click
+     */
+    public void setAnchor(double x, double y) {
+        hasAnchor = true;
+        anchorX = Math.floor(x);
+        anchorY = Math.floor(y);
+        markDirty();
+    }
+
+    /**
+     * removes the first click marker
+     */
+    public void clearAnchor() {
+        if(!hasAnchor) return;
+        hasAnchor = false;
+        markDirty();
+    }
+
+    /**
+     * shows what the shape being drawn will look like, on screen. Only the overlay
+     * repaints, so moving it costs the same however many shapes there are.
+     *
+     * @param oval          true for an ellipse, false for a rectangle
+     * @param x             left edge
+     * @param y             top edge
+     * @param w             width
+     * @param h             height
+     * @param fill          fill color
+     * @param border        border color
+     * @param lineWidth     border thickness on screen, 0 for none
+     */
+    public void setPreview(boolean oval, double x, double y, double w, double h, Color fill, Color border, double lineWidth) {
+        hasPreview = true;
+        previewOval = oval;
+        previewX = x;
+        previewY = y;
+        previewW = w;
+        previewH = h;
+        previewFill = fill;
+        previewBorder = border;
+        previewLineWidth = lineWidth;
+        markDirty();
+    }
+
+    /**
+     * hides the shape preview
+     */
+    public void clearPreview() {
+        if(!hasPreview) return;
+        hasPreview = false;
+        markDirty();
+    }
+
+    /**
+     * shows a dashed box around the selection, on screen
+     *
+     * @param x     left edge
+     * @param y     top edge
+     * @param w     width
+     * @param h     height
+     */
+    public void setSelection(double x, double y, double w, double h) {
+        hasSelection = true;
+        selectionX = Math.floor(x);
+        selectionY = Math.floor(y);
+        selectionW = Math.round(w);
+        selectionH = Math.round(h);
+        markDirty();
+    }
+
+    /**
+     * hides the selection box
+     */
+    public void clearSelection() {
+        if(!hasSelection) return;
+        hasSelection = false;
+        markDirty();
+    }
+
+    /**
+     * outlines a shape, only repaints if it's a different shape than last time
+     *
+     * @param s     the shape under the mouse
+     * @param port  viewport of the view the shape is seen in
+     * @param x     left edge of that view
+     * @param y     top edge of that view
+     * @param w     width of that view
+     * @param h     height of that view
+     */
+    public void setHover(Shape s, Viewport port, double x, double y, double w, double h) {
+        if(s.equals(hover) && port == hoverPort && x == hoverX && y == hoverY) return;
+        hover = s;
+        hoverPort = port;
+        hoverX = x;
+        hoverY = y;
+        hoverW = w;
+        hoverH = h;
+        markDirty();
+    }
+
+    /**
+     * stops outlining the shape under the mouse
+     */
+    public void clearHover() {
+        if(hover == null) return;
+        hover = null;
+        hoverPort = null;
+        markDirty();
+    }
+
+    /**
+     * @return      the outlined shape, null if there isn't one
+     */
+    public Shape getHover() {
+        return hover;
+    }
+
+    /**
+     * @return      the overlay canvas
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+}
@@ -0,0 +1,154 @@
+import javafx.scene.paint.Color;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Draws shapes into a Raster using every core. The raster is cut into tiles
+ * and each tile is drawn by its own fork/join task with the raster clipped to
+ * it. Every pixel belongs to exactly one tile and each tile draws its shapes
+ * bottom to top, so the result is the same pixel for pixel as drawing
+ * everything on one thread, no matter how the tasks get scheduled.
+ *
+ * Before drawing, the shapes are sorted into per-tile bins in one pass, so a
+ * tile only looks at the shapes that touch it.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class ParallelRasterizer
+{
+    public static final int TILE_SIZE = 64;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for ParallelRasterizer, uses the common pool
+     */
+    public ParallelRasterizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for ParallelRasterizer
+     *
+     * @param pool      the pool to run tile tasks on
+     */
+    public ParallelRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * clears the raster to white and draws the shapes into it
+     *
+     * @param r         the Raster to draw into
+     * @param shapes    the shapes, bottom to top
+     * @param scale     pixels per world unit
+     * @param offX      world x at the left edge of the raster
+     * @param offY      world y at the top edge of the raster
+     * @param stop      checked now and then, drawing gives up once it says true
+     * @return          true if everything got drawn
+     */
+    public boolean render(Raster r, Shape[] shapes, double scale, double offX, double offY, BooleanSupplier stop) {
+        int cols = (r.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (r.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+        int[][] bins = bin(shapes, cols, rows, scale, offX, offY);
+        r.setTransform(scale, -offX * scale, -offY * scale);
+
+        TileTask all = new TileTask(r, shapes, bins, cols, 0, cols * rows, stop);
+        pool.invoke(all);
+        return !stop.getAsBoolean();
+    }
+
+    /**
+     * works out which shapes touch which tile
+     *
+     * @return      for each tile, the indexes of its shapes in drawing order
+     */
+    private static int[][] bin(Shape[] shapes, int cols, int rows, double scale, double offX, double offY) {
+        int[] counts = new int[cols * rows];
+        int[] range = new int[4];
+        //count first so every bin gets made exactly the right size
+        for(int i = 0; i < shapes.length; i++) {
+            tileRange(shapes[i], cols, rows, scale, offX, offY, range);
+            for(int ty = range[1]; ty <= range[3]; ty++) {
+                for(int tx = range[0]; tx <= range[2]; tx++) counts[ty * cols + tx]++;
+            }
+        }
+        int[][] bins = new int[cols * rows][];
+        for(int t = 0; t < bins.length; t++) {
+            bins[t] = new int[counts[t]];
+            counts[t] = 0;
+        }
+        for(int i = 0; i < shapes.length; i++) {
+            tileRange(shapes[i], cols, rows, scale, offX, offY, range);
+            for(int ty = range[1]; ty <= range[3]; ty++) {
+                for(int tx = range[0]; tx <= range[2]; tx++) {
+                    int t = ty * cols + tx;
+                    bins[t][counts[t]++] = i;
+                }
+            }
+        }
+        return bins;
+    }
+
+    /**
+     * finds the tiles a shape touches, empty (first past last) if it's off the raster
+     *
+     * @param out   gets {firstCol, firstRow, lastCol, lastRow}
+     */
+    private static void tileRange(Shape s, int cols, int rows, double scale, double offX, double offY, int[] out) {
+        //a pixel of slack for anti-aliasing, the shape's own padding shrinks when zoomed out
+        out[0] = Math.max(0, (int)Math.floor(((s.getMinX() - offX) * scale - 1) / TILE_SIZE));
+        out[1] = Math.max(0, (int)Math.floor(((s.getMinY() - offY) * scale - 1) / TILE_SIZE));
+        out[2] = Math.min(cols - 1, (int)Math.floor(((s.getMaxX() - offX) * scale + 1) / TILE_SIZE));
+        out[3] = Math.min(rows - 1, (int)Math.floor(((s.getMaxY() - offY) * scale + 1) / TILE_SIZE));
+    }
+
+    /**
+     * Draws a range of tiles, splitting itself in half until it's down to one tile.
+     */
+    private static class TileTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Raster target;
+        private final Shape[] shapes;
+        private final int[][] bins;
+        private final int cols;
+        private final int from;
+        private final int to;
+        private final BooleanSupplier stop;
+
+        private TileTask(Raster target, Shape[] shapes, int[][] bins, int cols, int from, int to, BooleanSupplier stop) {
+            this.target = target;
+            this.shapes = shapes;
+            this.bins = bins;
+            this.cols = cols;
+            this.from = from;
+            this.to = to;
+            this.stop = stop;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(target, shapes, bins, cols, from, mid, stop),
+                          new TileTask(target, shapes, bins, cols, mid, to, stop));
+                return;
+            }
+            if(stop.getAsBoolean()) return;
+
+            int x0 = (from % cols) * TILE_SIZE;
+            int y0 = (from / cols) * TILE_SIZE;
+            Raster r = target.share();
+            r.setClip(x0, y0, x0 + TILE_SIZE, y0 + TILE_SIZE);
+            r.clearClip(Color.WHITE);
+            int[] bin = bins[from];
+            for(int i = 0; i < bin.length; i++) {
+                shapes[bin[i]].draw(r);
+            }
+        }
+    }
+}
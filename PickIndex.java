@@ -0,0 +1,678 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finds the top shape under a point without looking at every shape. The
+ * world is split into a grid of square cells, kept in a hash so only cells
+ * with something in them take any memory, and each cell lists the shapes
+ * that overlap it. A pick only tests the shapes in one cell.
+ *
+ * A shape that would cover lots of cells goes in a coarser grid instead,
+ * each one with cells LEVEL_STEP times as wide as the one before, so a
+ * pick tests one cell per grid. Only shapes too big for even the coarsest
+ * grid go in a plain list that every pick checks.
+ *
+ * Cells hold where shapes are in the list and not the shapes themselves,
+ * and everything about them is read through ShapeStore's index accessors,
+ * so keeping the index up to date and picking don't make any shapes. Shapes are only
+ * ever added on top and undo takes the newest one off, so a shape stays at
+ * the same place in the list and higher places are higher up the stack.
+ * Each cell is kept sorted and the top shape is the last one that contains
+ * the point.
+ *
+ * The grids are kept in a small hash of their own keyed by plain longs, so
+ * looking a cell up doesn't box its key and a pick allocates nothing.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class PickIndex implements ShapeListener
+{
+    public static final double DEFAULT_CELL_SIZE = 64;
+    //a shape covering more cells than this goes in the next coarser grid
+    private static final int MAX_CELLS = 256;
+    //how many grids there are, and how much wider each one's cells are than the one before
+    private static final int LEVELS = 4;
+    private static final int LEVEL_STEP = 16;
+
+    private final List<Shape> shapes;
+    private final double[] cellSizes = new double[LEVELS];
+    private final CellMap[] grids = new CellMap[LEVELS];
+    //shapes too big for every grid
+    private final Cell big = new Cell();
+    //the outermost cells each grid has, {firstCol, firstRow, lastCol, lastRow}
+    private final long[][] ranges = new long[LEVELS][4];
+    //grids that lost a cell on the edge of their range, it gets pulled in on the next getBounds
+    private final boolean[] shrunk = new boolean[LEVELS];
+    //a box around shapes that changed in place since the last pick
+    private boolean changed = false;
+    private double changeX0, changeY0, changeX1, changeY1;
+
+    //stats
+    private long picks;
+    private long tested;
+
+    /**
+     * Constructor for PickIndex
+     *
+     * @param shapes    all shapes, bottom to top
+     * @param cellSize  width and height of a cell in the finest grid, in world units
+     */
+    public PickIndex(List<Shape> shapes, double cellSize) {
+        if(cellSize <= 0) throw new IllegalArgumentException("Cell size must be positive.");
+        this.shapes = shapes;
+        for(int l = 0; l < LEVELS; l++) {
+            cellSizes[l] = l == 0 ? cellSize : cellSizes[l - 1] * LEVEL_STEP;
+            grids[l] = new CellMap();
+        }
+        rebuild();
+    }
+
+    /**
+     * makes the index again from scratch
+     */
+    public void rebuild() {
+        for(int l = 0; l < LEVELS; l++) {
+            grids[l].clear();
+            shrunk[l] = false;
+        }
+        big.size = 0;
+        changed = false;
+        for(int i = 0; i < shapes.size(); i++) insert(i);
+    }
+
+    /**
+     * @param s     the shape that was added on top
+     */
+    public void shapeAdded(Shape s) {
+        insert(shapes.size() - 1);
+    }
+
+    /**
+     * @param s     the shape that was removed, always the newest one
+     */
+    public void shapeRemoved(Shape s) {
+        //it's filed where it was at the last pick, get the cells up to date first
+        if(changed) applyChanges();
+        remove(shapes.size(), s.getMinX(), s.getMinY(), s.getMaxX(), s.getMaxY());
+    }
+
+    /**
+     * files the moved shapes again, only they get looked at
+     *
+     * @param moved     the shapes, already at their new spot
+     * @param x         left edge of the box around them before the move
+     * @param y         top edge of that box
+     * @param w         width of that box
+     * @param h         height of that box
+     * @param dx        how far they moved right
+     * @param dy        how far they moved down
+     */
+    public void shapesMoved(Collection<Shape> moved, double x, double y, double w, double h, double dx, double dy) {
+        if(changed) applyChanges();
+        for(Shape s : moved) {
+            int index = shapes.indexOf(s);
+            if(index < 0) continue;
+            remove(index, s.getMinX() - dx, s.getMinY() - dy, s.getMaxX() - dx, s.getMaxY() - dy);
+            insert(index);
+        }
+    }
+
+    /**
+     * remembers the box, the cells get fixed up on the next pick. Nothing says which
+     * shapes changed, so that means looking at every shape in the box, moves should
+     * come through shapesMoved instead.
+     *
+     * @param x     left edge of the changed area in world coordinates
+     * @param y     top edge of the changed area in world coordinates
+     * @param w     width of the changed area
+     * @param h     height of the changed area
+     */
+    public void shapesChanged(double x, double y, double w, double h) {
+        if(!changed) {
+            changeX0 = x;
+            changeY0 = y;
+            changeX1 = x + w;
+            changeY1 = y + h;
+            changed = true;
+            return;
+        }
+        changeX0 = Math.min(changeX0, x);
+        changeY0 = Math.min(changeY0, y);
+        changeX1 = Math.max(changeX1, x + w);
+        changeY1 = Math.max(changeY1, y + h);
+    }
+
+    /**
+     * drops shapes from the cells in the changed box they've moved out of, and files
+     * every shape that's in the box now under its cells
+     */
+    private void applyChanges() {
+        changed = false;
+        int n = shapes.size();
+        for(int l = 0; l < LEVELS; l++) {
+            double size = cellSizes[l];
+            long c0 = cell(changeX0, l), r0 = cell(changeY0, l), c1 = cell(changeX1, l), r1 = cell(changeY1, l);
+            CellMap grid = grids[l];
+            //emptied cells are taken out after, taking them out now would shuffle cells not looked at yet
+            long[] emptied = new long[0];
+            int emptiedCount = 0;
+            for(int slot = 0; slot < grid.capacity(); slot++) {
+                Cell list = grid.cellAt(slot);
+                if(list == null) continue;
+                long c = col(grid.keyAt(slot));
+                long r = row(grid.keyAt(slot));
+                if(c < c0 || c > c1 || r < r0 || r > r1) continue;
+                int kept = 0;
+                for(int i = 0; i < list.size; i++) {
+                    int k = list.items[i];
+                    //a shape that was just undone can still be here, it's past the end of the list
+                    if(k < n && ShapeStore.intersects(shapes, k, c * size, r * size, size, size) && level(k) == l) list.items[kept++] = k;
+                }
+                list.size = kept;
+                if(kept == 0) {
+                    if(emptiedCount == emptied.length) emptied = Arrays.copyOf(emptied, Math.max(16, emptiedCount * 2));
+                    emptied[emptiedCount++] = grid.keyAt(slot);
+                }
+            }
+            for(int i = 0; i < emptiedCount; i++) {
+                grid.remove(emptied[i]);
+                cellRemoved(l, col(emptied[i]), row(emptied[i]));
+            }
+        }
+        int kept = 0;
+        for(int i = 0; i < big.size; i++) {
+            int k = big.items[i];
+            if(k < n && level(k) == LEVELS) big.items[kept++] = k;
+        }
+        big.size = kept;
+        double w = changeX1 - changeX0;
+        double h = changeY1 - changeY0;
+        for(int i = 0; i < n; i++) {
+            if(ShapeStore.intersects(shapes, i, changeX0, changeY0, w, h)) insert(i);
+        }
+    }
+
+    /**
+     * finds the top shape under a point
+     *
+     * @param x     x of the point in world coordinates
+     * @param y     y of the point in world coordinates
+     * @return      a copy of the shape if it's a ShapeStore, null if there's nothing there
+     */
+    public Shape pick(double x, double y) {
+        int hit = pickIndex(x, y);
+        return hit < 0 ? null : shapes.get(hit);
+    }
+
+    /**
+     * finds where the top shape under a point is in the list, without making any objects
+     *
+     * @param x     x of the point in world coordinates
+     * @param y     y of the point in world coordinates
+     * @return      index of the shape, -1 if there's nothing there
+     */
+    public int pickIndex(double x, double y) {
+        if(changed) applyChanges();
+        picks++;
+        int hit = topmost(big, x, y, -1);
+        for(int l = 0; l < LEVELS; l++) hit = topmost(grids[l].get(key(cell(x, l), cell(y, l))), x, y, hit);
+        return hit;
+    }
+
+    /**
+     * @return      where the top shape in a cell that contains the point is, if it's above
+     *              the one found so far, otherwise the one found so far
+     */
+    private int topmost(Cell list, double x, double y, int found) {
+        if(list == null) return found;
+        //sorted, so nothing under what's been found so far needs testing
+        for(int i = list.size - 1; i >= 0 && list.items[i] > found; i--) {
+            tested++;
+            if(ShapeStore.contains(shapes, list.items[i], x, y)) return list.items[i];
+        }
+        return found;
+    }
+
+    /**
+     * finds every shape whose painted area overlaps a box, only looking in the cells the box covers
+     *
+     * @param x     left edge of the box in world coordinates
+     * @param y     top edge of the box
+     * @param w     width of the box
+     * @param h     height of the box
+     * @return      where the shapes are in the list, bottom to top
+     */
+    public int[] query(double x, double y, double w, double h) {
+        if(changed) applyChanges();
+        Cell found = new Cell();
+        for(int l = 0; l < LEVELS; l++) {
+            CellMap grid = grids[l];
+            long c0 = cell(x, l), r0 = cell(y, l), c1 = cell(x + w, l), r1 = cell(y + h, l);
+            if((c1 - c0 + 1) * (r1 - r0 + 1) <= grid.size()) {
+                for(long r = r0; r <= r1; r++) {
+                    for(long c = c0; c <= c1; c++) found.addAll(grid.get(key(c, r)));
+                }
+            } else {
+                //the box covers more cells than there are kept, so go through those instead
+                for(int slot = 0; slot < grid.capacity(); slot++) {
+                    if(grid.cellAt(slot) == null) continue;
+                    long c = col(grid.keyAt(slot));
+                    long r = row(grid.keyAt(slot));
+                    if(c >= c0 && c <= c1 && r >= r0 && r <= r1) found.addAll(grid.cellAt(slot));
+                }
+            }
+        }
+        found.addAll(big);
+        Arrays.sort(found.items, 0, found.size);
+        int count = 0;
+        for(int i = 0; i < found.size; i++) {
+            int k = found.items[i];
+            if(count > 0 && found.items[count - 1] == k) continue;
+            if(ShapeStore.intersects(shapes, k, x, y, w, h)) found.items[count++] = k;
+        }
+        return Arrays.copyOf(found.items, count);
+    }
+
+    /**
+     * works out the box around every shape's painted area. The shape furthest out on
+     * each side is always in the outermost cells of its grid, so only those get looked at.
+     *
+     * @param out   gets the box as {minX, minY, maxX, maxY}
+     * @return      false if there are no shapes, out is left alone then
+     */
+    public boolean getBounds(double[] out) {
+        if(changed) applyChanges();
+        double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        boolean any = big.size > 0;
+        takeEdges(big, true, true, true, true, box);
+        for(int l = 0; l < LEVELS; l++) {
+            CellMap grid = grids[l];
+            if(grid.size() == 0) continue;
+            any = true;
+            if(shrunk[l]) tighten(l);
+            long c0 = ranges[l][0], r0 = ranges[l][1], c1 = ranges[l][2], r1 = ranges[l][3];
+            if(2 * ((c1 - c0 + 1) + (r1 - r0 + 1)) <= grid.size()) {
+                //walk round the edge, corners get looked at twice which doesn't matter
+                for(long r = r0; r <= r1; r++) {
+                    takeEdges(grid.get(key(c0, r)), true, r == r0, c0 == c1, r == r1, box);
+                    takeEdges(grid.get(key(c1, r)), c0 == c1, r == r0, true, r == r1, box);
+                }
+                for(long c = c0; c <= c1; c++) {
+                    takeEdges(grid.get(key(c, r0)), c == c0, true, c == c1, r0 == r1, box);
+                    takeEdges(grid.get(key(c, r1)), c == c0, r0 == r1, c == c1, true, box);
+                }
+            } else {
+                for(int slot = 0; slot < grid.capacity(); slot++) {
+                    if(grid.cellAt(slot) == null) continue;
+                    long c = col(grid.keyAt(slot));
+                    long r = row(grid.keyAt(slot));
+                    if(c == c0 || c == c1 || r == r0 || r == r1) takeEdges(grid.cellAt(slot), c == c0, r == r0, c == c1, r == r1, box);
+                }
+            }
+        }
+        if(!any) return false;
+        System.arraycopy(box, 0, out, 0, 4);
+        return true;
+    }
+
+    /**
+     * pushes the box out to the shapes in a cell, only on the sides the cell is on the edge of
+     */
+    private void takeEdges(Cell list, boolean left, boolean top, boolean right, boolean bottom, double[] box) {
+        if(list == null) return;
+        for(int i = 0; i < list.size; i++) {
+            int k = list.items[i];
+            if(left) box[0] = Math.min(box[0], ShapeStore.getMinX(shapes, k));
+            if(top) box[1] = Math.min(box[1], ShapeStore.getMinY(shapes, k));
+            if(right) box[2] = Math.max(box[2], ShapeStore.getMaxX(shapes, k));
+            if(bottom) box[3] = Math.max(box[3], ShapeStore.getMaxY(shapes, k));
+        }
+    }
+
+    /**
+     * @param level     which grid got the cell, it can only push the range out
+     */
+    private void cellAdded(int level, long c, long r) {
+        long[] range = ranges[level];
+        if(grids[level].size() == 1) {
+            range[0] = c;
+            range[1] = r;
+            range[2] = c;
+            range[3] = r;
+            shrunk[level] = false;
+            return;
+        }
+        range[0] = Math.min(range[0], c);
+        range[1] = Math.min(range[1], r);
+        range[2] = Math.max(range[2], c);
+        range[3] = Math.max(range[3], r);
+    }
+
+    /**
+     * @param level     which grid lost the cell, the range only needs pulling in if it was on the edge
+     */
+    private void cellRemoved(int level, long c, long r) {
+        long[] range = ranges[level];
+        if(c == range[0] || r == range[1] || c == range[2] || r == range[3]) shrunk[level] = true;
+    }
+
+    /**
+     * pulls a grid's range in past empty columns and rows on its edges. If that would take
+     * more lookups than there are cells it goes through the cells instead.
+     */
+    private void tighten(int level) {
+        shrunk[level] = false;
+        CellMap grid = grids[level];
+        long[] range = ranges[level];
+        long lookups = grid.size();
+        while(lookups > 0) {
+            lookups -= 2 * ((range[2] - range[0] + 1) + (range[3] - range[1] + 1));
+            if(empty(grid, range[0], range[1], range[0], range[3])) range[0]++;
+            else if(empty(grid, range[2], range[1], range[2], range[3])) range[2]--;
+            else if(empty(grid, range[0], range[1], range[2], range[1])) range[1]++;
+            else if(empty(grid, range[0], range[3], range[2], range[3])) range[3]--;
+            else return;
+        }
+        range[0] = Long.MAX_VALUE;
+        range[1] = Long.MAX_VALUE;
+        range[2] = Long.MIN_VALUE;
+        range[3] = Long.MIN_VALUE;
+        for(int slot = 0; slot < grid.capacity(); slot++) {
+            if(grid.cellAt(slot) == null) continue;
+            long k = grid.keyAt(slot);
+            range[0] = Math.min(range[0], col(k));
+            range[1] = Math.min(range[1], row(k));
+            range[2] = Math.max(range[2], col(k));
+            range[3] = Math.max(range[3], row(k));
+        }
+    }
+
+    /**
+     * @return      true if none of the cells from (c0, r0) to (c1, r1) are kept
+     */
+    private static boolean empty(CellMap grid, long c0, long r0, long c1, long r1) {
+        for(long r = r0; r <= r1; r++) {
+            for(long c = c0; c <= c1; c++) {
+                if(grid.get(key(c, r)) != null) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * files a shape under every cell it overlaps in its grid, or in the big list
+     *
+     * @param index     where the shape is in the list
+     */
+    private void insert(int index) {
+        double minX = ShapeStore.getMinX(shapes, index);
+        double minY = ShapeStore.getMinY(shapes, index);
+        double maxX = ShapeStore.getMaxX(shapes, index);
+        double maxY = ShapeStore.getMaxY(shapes, index);
+        int l = level(minX, minY, maxX, maxY);
+        if(l == LEVELS) {
+            big.insert(index);
+            return;
+        }
+        CellMap grid = grids[l];
+        long c0 = cell(minX, l), r0 = cell(minY, l), c1 = cell(maxX, l), r1 = cell(maxY, l);
+        for(long r = r0; r <= r1; r++) {
+            for(long c = c0; c <= c1; c++) {
+                long k = key(c, r);
+                Cell list = grid.get(k);
+                if(list == null) {
+                    list = new Cell();
+                    grid.put(k, list);
+                    cellAdded(l, c, r);
+                }
+                list.insert(index);
+            }
+        }
+    }
+
+    /**
+     * takes a shape out of the cells it was filed under
+     *
+     * @param index     where the shape is in the list
+     * @param minX      left edge of where it was filed
+     * @param minY      top edge of where it was filed
+     * @param maxX      right edge of where it was filed
+     * @param maxY      bottom edge of where it was filed
+     */
+    private void remove(int index, double minX, double minY, double maxX, double maxY) {
+        int l = level(minX, minY, maxX, maxY);
+        if(l == LEVELS) {
+            big.remove(index);
+            return;
+        }
+        CellMap grid = grids[l];
+        long c0 = cell(minX, l), r0 = cell(minY, l), c1 = cell(maxX, l), r1 = cell(maxY, l);
+        for(long r = r0; r <= r1; r++) {
+            for(long c = c0; c <= c1; c++) {
+                long k = key(c, r);
+                Cell list = grid.get(k);
+                if(list == null) continue;
+                list.remove(index);
+                if(list.size == 0) {
+                    grid.remove(k);
+                    cellRemoved(l, c, r);
+                }
+            }
+        }
+    }
+
+    private int level(int index) {
+        return level(ShapeStore.getMinX(shapes, index), ShapeStore.getMinY(shapes, index), ShapeStore.getMaxX(shapes, index), ShapeStore.getMaxY(shapes, index));
+    }
+
+    /**
+     * @return      the finest grid a box covers no more than MAX_CELLS cells of, LEVELS if there isn't one
+     */
+    private int level(double minX, double minY, double maxX, double maxY) {
+        for(int l = 0; l < LEVELS; l++) {
+            if((cell(maxX, l) - cell(minX, l) + 1) * (cell(maxY, l) - cell(minY, l) + 1) <= MAX_CELLS) return l;
+        }
+        return LEVELS;
+    }
+
+    private long cell(double v, int level) {
+        return (long)Math.floor(v / cellSizes[level]);
+    }
+
+    /**
+     * packs a cell's column and row into one number, CellMap spreads all 64 bits over its slots
+     */
+    private static long key(long col, long row) {
+        return (row << 32) | (col & 0xffffffffL);
+    }
+
+    private static long col(long key) {
+        return (int)key;
+    }
+
+    private static long row(long key) {
+        return key >> 32;
+    }
+
+    /**
+     * @return      how many picks there have been
+     */
+    public long getPicks() {
+        return picks;
+    }
+
+    /**
+     * @return      how many shapes picks have tested altogether
+     */
+    public long getTested() {
+        return tested;
+    }
+
+    /**
+     * @return      how many cells are kept over every grid
+     */
+    public int getCellCount() {
+        int n = 0;
+        for(int l = 0; l < LEVELS; l++) n += grids[l].size();
+        return n;
+    }
+
+    /**
+     * sets the stats back to 0
+     */
+    public void resetStats() {
+        picks = 0;
+        tested = 0;
+    }
+
+    /**
+     * @return      stats about the index
+     */
+    public String toString() {
+        return "PickIndex: cells = " + getCellCount() + "  big shapes = " + big.size + "  picks = " + picks + "  tested per pick = " + (picks == 0 ? 0 : tested / picks);
+    }
+
+    /**
+     * One grid's cells by key. Open addressing with linear probing, so a lookup is a
+     * multiply and a walk along an array and neither keys nor entries are objects.
+     * A slot is empty when its cell is null, key 0 is a real cell.
+     */
+    private static class CellMap
+    {
+        private long[] keys = new long[16];
+        private Cell[] cells = new Cell[16];
+        private int size = 0;
+        private int shift = 64 - 4;
+
+        private int slot(long key) {
+            return (int)((key * 0x9e3779b97f4a7c15L) >>> shift);
+        }
+
+        private Cell get(long key) {
+            int mask = cells.length - 1;
+            for(int i = slot(key); cells[i] != null; i = (i + 1) & mask) {
+                if(keys[i] == key) return cells[i];
+            }
+            return null;
+        }
+
+        /**
+         * adds a cell, the key mustn't be in the map already
+         */
+        private void put(long key, Cell cell) {
+            //kept at most half full so probes stay short
+            if(2 * (size + 1) > cells.length) grow();
+            int mask = cells.length - 1;
+            int i = slot(key);
+            while(cells[i] != null) i = (i + 1) & mask;
+            keys[i] = key;
+            cells[i] = cell;
+            size++;
+        }
+
+        private void remove(long key) {
+            int mask = cells.length - 1;
+            int i = slot(key);
+            while(cells[i] != null && keys[i] != key) i = (i + 1) & mask;
+            if(cells[i] == null) return;
+            size--;
+            //pull later cells of the run back into the gap, so no lookup stops short of them
+            int gap = i;
+            for(int j = (i + 1) & mask; cells[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if(((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    cells[gap] = cells[j];
+                    gap = j;
+                }
+            }
+            cells[gap] = null;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Cell[] oldCells = cells;
+            keys = new long[oldKeys.length * 2];
+            cells = new Cell[oldCells.length * 2];
+            shift--;
+            size = 0;
+            for(int i = 0; i < oldCells.length; i++) {
+                if(oldCells[i] != null) put(oldKeys[i], oldCells[i]);
+            }
+        }
+
+        private void clear() {
+            Arrays.fill(cells, null);
+            size = 0;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        /**
+         * @return      how many slots there are, for going through the cells with cellAt and keyAt
+         */
+        private int capacity() {
+            return cells.length;
+        }
+
+        private Cell cellAt(int slot) {
+            return cells[slot];
+        }
+
+        private long keyAt(int slot) {
+            return keys[slot];
+        }
+    }
+
+    /**
+     * Places in the shape list, kept sorted
+     */
+    private static class Cell
+    {
+        private int[] items = new int[4];
+        private int size = 0;
+
+        /**
+         * puts a place in, unless it's already there. New shapes go on the end.
+         */
+        private void insert(int index) {
+            int i = find(index);
+            if(i >= 0) return;
+            i = -i - 1;
+            if(size == items.length) items = Arrays.copyOf(items, size * 2);
+            System.arraycopy(items, i, items, i + 1, size - i);
+            items[i] = index;
+            size++;
+        }
+
+        private void remove(int index) {
+            int i = find(index);
+            if(i < 0) return;
+            System.arraycopy(items, i + 1, items, i, size - i - 1);
+            size--;
+        }
+
+        /**
+         * tacks another cell's places on the end, unsorted, for gathering up a query
+         */
+        private void addAll(Cell other) {
+            if(other == null || other.size == 0) return;
+            if(size + other.size > items.length) items = Arrays.copyOf(items, Math.max(items.length * 2, size + other.size));
+            System.arraycopy(other.items, 0, items, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * @return      where the place is, or -(where it would go) - 1
+         */
+        private int find(int index) {
+            //almost always the newest, so check the end first
+            if(size > 0 && items[size - 1] < index) return -size - 1;
+            return Arrays.binarySearch(items, 0, size, index);
+        }
+    }
+}
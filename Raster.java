@@ -0,0 +1,647 @@
+import javafx.scene.paint.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ * A plain block of ARGB pixels that shapes can be drawn into without JavaFX
+ * drawing anything. Since it's just an int array it can be drawn on any
+ * thread, then handed to the screen in one go.
+ *
+ * Pixels are stored premultiplied (the color channels are already scaled by
+ * alpha), which is what JavaFX wants for PixelBuffer and makes blending cheap.
+ *
+ * Edges are anti-aliased by working out how much of each pixel a shape
+ * covers: exactly for rectangles, and for ellipses by cutting each row into
+ * a few thinner rows and measuring those exactly side to side. Away from
+ * edges the result is within 2 shades of what JavaFX draws, edge pixels can
+ * be further off since JavaFX works out coverage its own way (RenderBench
+ * reference checks both). With anti-aliasing off, a pixel is simply in a
+ * shape if its center is.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class Raster
+{
+    public static final double DRAFT_DOT_SIZE = 2;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    //world to pixel transform, pixel = world * scale + translate
+    private double scale = 1;
+    private double tx = 0;
+    private double ty = 0;
+
+    private int clipX0, clipY0, clipX1, clipY1;
+
+    //anti-aliasing, coverage of the partly covered pixels in the row being built, indexed
+    //from clipX0. Pixels a shape covers completely skip this and get filled straight away,
+    //so only the edges cost extra.
+    private static final int SUBSAMPLES = 4;
+    private boolean antialiasing = true;
+    //cheap drawing while the user is busy, see setDraft
+    private boolean draft = false;
+    private float[] cov = new float[0];
+    private int covMin;
+    private int covMax;
+    private double[] outer = new double[SUBSAMPLES];
+    private double[] inner = new double[SUBSAMPLES];
+
+    //converting a Color isn't free and shapes mostly share a few
+    private Color lastColor;
+    private int lastArgb;
+
+    /**
+     * Constructor for Raster
+     *
+     * @param width     width in pixels
+     * @param height    height in pixels
+     */
+    public Raster(int width, int height) {
+        if(width <= 0 || height <= 0) throw new IllegalArgumentException("Raster size must be positive.");
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        resetClip();
+    }
+
+    /**
+     * Constructor for a Raster that draws into the same pixels as another one, but
+     * with its own clip and transform. Lets several threads draw separate parts at once.
+     *
+     * @param other     the Raster whose pixels to share
+     */
+    private Raster(Raster other) {
+        width = other.width;
+        height = other.height;
+        pixels = other.pixels;
+        antialiasing = other.antialiasing;
+        draft = other.draft;
+        setTransform(other.scale, other.tx, other.ty);
+        resetClip();
+    }
+
+    /**
+     * @return      a new Raster over the same pixels with its own clip and transform
+     */
+    public Raster share() {
+        return new Raster(this);
+    }
+
+    /**
+     * fills the inside of the clip with one color
+     *
+     * @param c     the color
+     */
+    public void clearClip(Color c) {
+        int argb = toArgb(c);
+        for(int py = clipY0; py < clipY1; py++) {
+            SpanKernels.fill(pixels, py * width + clipX0, py * width + clipX1, argb);
+        }
+    }
+
+    /**
+     * fills the whole raster with one color, ignoring the clip
+     *
+     * @param c     the color
+     */
+    public void clear(Color c) {
+        SpanKernels.fill(pixels, 0, pixels.length, toArgb(c));
+    }
+
+    /**
+     * sets how world coordinates map to pixels
+     *
+     * @param scale     pixels per world unit
+     * @param tx        pixel x of world x = 0
+     * @param ty        pixel y of world y = 0
+     */
+    public void setTransform(double scale, double tx, double ty) {
+        this.scale = scale;
+        this.tx = tx;
+        this.ty = ty;
+    }
+
+    /**
+     * only lets drawing touch pixels inside a box
+     *
+     * @param x0    first column
+     * @param y0    first row
+     * @param x1    column after the last
+     * @param y1    row after the last
+     */
+    public void setClip(int x0, int y0, int x1, int y1) {
+        clipX0 = Math.max(0, x0);
+        clipY0 = Math.max(0, y0);
+        clipX1 = Math.min(width, x1);
+        clipY1 = Math.min(height, y1);
+        if(cov.length < clipX1 - clipX0 + 1) cov = new float[clipX1 - clipX0 + 1];
+        covMin = Integer.MAX_VALUE;
+        covMax = -1;
+    }
+
+    /**
+     * @param antialiasing  true to smooth edges, false to just use pixel centers (faster)
+     */
+    public void setAntialiasing(boolean antialiasing) {
+        this.antialiasing = antialiasing;
+    }
+
+    /**
+     * turns draft quality on or off. Draft skips anti-aliasing, skips outlines thinner than
+     * a pixel, and draws anything under DRAFT_DOT_SIZE pixels both ways as the one pixel its
+     * center is in.
+     *
+     * @param draft     true for draft quality, false for normal
+     */
+    public void setDraft(boolean draft) {
+        this.draft = draft;
+    }
+
+    /**
+     * @return      true if the raster is drawing in draft quality
+     */
+    public boolean isDraft() {
+        return draft;
+    }
+
+    /**
+     * lets drawing touch the whole raster again
+     */
+    public void resetClip() {
+        setClip(0, 0, width, height);
+    }
+
+    /**
+     * fills a rectangle given in world coordinates
+     */
+    public void fillRect(double x, double y, double w, double h, Color c) {
+        int argb = toArgb(c);
+        if(argb == 0) return;
+        double x0 = x * scale + tx;
+        double y0 = y * scale + ty;
+        if(draft && isDot(w, h)) {
+            dot(x0 + w * scale / 2, y0 + h * scale / 2, argb);
+            return;
+        }
+        fillBox(x0, y0, x0 + w * scale, y0 + h * scale, argb);
+    }
+
+    /**
+     * strokes the outline of a rectangle given in world coordinates, centered on the edge like JavaFX does
+     */
+    public void strokeRect(double x, double y, double w, double h, double lineWidth, Color c) {
+        int argb = toArgb(c);
+        if(argb == 0 || lineWidth <= 0) return;
+        if(draft && (lineWidth * scale < 1 || isDot(w, h))) return;
+        double half = lineWidth * scale / 2;
+        double x0 = x * scale + tx;
+        double y0 = y * scale + ty;
+        double x1 = x0 + w * scale;
+        double y1 = y0 + h * scale;
+        if(x1 - x0 <= 2 * half || y1 - y0 <= 2 * half) {
+            fillBox(x0 - half, y0 - half, x1 + half, y1 + half, argb);
+            return;
+        }
+        double ox0 = x0 - half, oy0 = y0 - half, ox1 = x1 + half, oy1 = y1 + half;
+        double ix0 = x0 + half, iy0 = y0 + half, ix1 = x1 - half, iy1 = y1 - half;
+        if(!antialiasing || draft) {
+            fillBox(ox0, oy0, ox1, iy0, argb);
+            fillBox(ox0, iy1, ox1, oy1, argb);
+            fillBox(ox0, iy0, ix0, iy1, argb);
+            fillBox(ix1, iy0, ox1, iy1, argb);
+            return;
+        }
+        //the outer box minus the inner box, row by row
+        int r0 = Math.max(clipY0, (int)Math.floor(oy0));
+        int r1 = Math.min(clipY1, (int)Math.ceil(oy1));
+        for(int py = r0; py < r1; py++) {
+            double wo = overlap(py, oy0, oy1);
+            double wi = overlap(py, iy0, iy1);
+            if(wi <= 0) {
+                boxRow(py, ox0, ox1, wo, argb);
+            } else if(wo >= 1 && wi >= 1) {
+                boxRow(py, ox0, ix0, 1, argb);
+                boxRow(py, ix1, ox1, 1, argb);
+            } else {
+                accumulate(ox0, ox1, wo);
+                accumulate(ix0, ix1, -wi);
+                flushRow(py, argb);
+            }
+        }
+    }
+
+    /**
+     * fills an ellipse given by its bounding box in world coordinates
+     */
+    public void fillEllipse(double x, double y, double w, double h, Color c) {
+        int argb = toArgb(c);
+        if(argb == 0) return;
+        double rx = w * scale / 2;
+        double ry = h * scale / 2;
+        double cx = x * scale + tx + rx;
+        double cy = y * scale + ty + ry;
+        if(draft && isDot(w, h)) {
+            dot(cx, cy, argb);
+            return;
+        }
+        if(!antialiasing || draft) {
+            int r0 = Math.max(clipY0, pixelStart(cy - ry));
+            int r1 = Math.min(clipY1, pixelStart(cy + ry));
+            for(int py = r0; py < r1; py++) {
+                double half = halfWidth(py + 0.5 - cy, rx, ry);
+                if(half > 0) span(py, cx - half, cx + half, argb);
+            }
+            return;
+        }
+        int r0 = Math.max(clipY0, (int)Math.floor(cy - ry));
+        int r1 = Math.min(clipY1, (int)Math.ceil(cy + ry));
+        for(int py = r0; py < r1; py++) {
+            double narrowest = Double.MAX_VALUE;
+            for(int k = 0; k < SUBSAMPLES; k++) {
+                outer[k] = halfWidth(py + (k + 0.5) / SUBSAMPLES - cy, rx, ry);
+                narrowest = Math.min(narrowest, outer[k]);
+            }
+            //pixels inside the narrowest slice are covered by every slice
+            int s0 = solidStart(cx - narrowest);
+            int s1 = solidEnd(cx + narrowest);
+            for(int k = 0; k < SUBSAMPLES; k++) {
+                if(outer[k] > 0) accumulateOutside(cx - outer[k], cx + outer[k], 1.0 / SUBSAMPLES, s0, s1);
+            }
+            flushRow(py, argb, s0, s1);
+            fillRange(py, s0, s1, argb);
+        }
+    }
+
+    /**
+     * strokes the outline of an ellipse given by its bounding box in world coordinates
+     */
+    public void strokeEllipse(double x, double y, double w, double h, double lineWidth, Color c) {
+        int argb = toArgb(c);
+        if(argb == 0 || lineWidth <= 0) return;
+        if(draft && (lineWidth * scale < 1 || isDot(w, h))) return;
+        double half = lineWidth * scale / 2;
+        double rx = w * scale / 2;
+        double ry = h * scale / 2;
+        double cx = x * scale + tx + rx;
+        double cy = y * scale + ty + ry;
+        //the band between an ellipse grown by half the line width and one shrunk by it,
+        //not quite the true offset curve JavaFX strokes but within a shade or so for normal widths
+        double orx = rx + half, ory = ry + half;
+        double irx = rx - half, iry = ry - half;
+        boolean hollow = irx > 0 && iry > 0;
+        if(!antialiasing || draft) {
+            int r0 = Math.max(clipY0, pixelStart(cy - ory));
+            int r1 = Math.min(clipY1, pixelStart(cy + ory));
+            for(int py = r0; py < r1; py++) {
+                double dy = py + 0.5 - cy;
+                double o = halfWidth(dy, orx, ory);
+                double i = hollow ? halfWidth(dy, irx, iry) : 0;
+                if(o <= 0) continue;
+                if(i <= 0) {
+                    span(py, cx - o, cx + o, argb);
+                } else {
+                    span(py, cx - o, cx - i, argb);
+                    span(py, cx + i, cx + o, argb);
+                }
+            }
+            return;
+        }
+        int r0 = Math.max(clipY0, (int)Math.floor(cy - ory));
+        int r1 = Math.min(clipY1, (int)Math.ceil(cy + ory));
+        for(int py = r0; py < r1; py++) {
+            double narrowOuter = Double.MAX_VALUE;
+            double wideInner = 0;
+            double narrowInner = Double.MAX_VALUE;
+            for(int k = 0; k < SUBSAMPLES; k++) {
+                double dy = py + (k + 0.5) / SUBSAMPLES - cy;
+                outer[k] = halfWidth(dy, orx, ory);
+                inner[k] = hollow ? halfWidth(dy, irx, iry) : 0;
+                narrowOuter = Math.min(narrowOuter, outer[k]);
+                wideInner = Math.max(wideInner, inner[k]);
+                narrowInner = Math.min(narrowInner, inner[k]);
+            }
+            if(wideInner <= 0) {
+                //above or below the hole, same as a fill
+                int s0 = solidStart(cx - narrowOuter);
+                int s1 = solidEnd(cx + narrowOuter);
+                for(int k = 0; k < SUBSAMPLES; k++) {
+                    if(outer[k] > 0) accumulateOutside(cx - outer[k], cx + outer[k], 1.0 / SUBSAMPLES, s0, s1);
+                }
+                flushRow(py, argb, s0, s1);
+                fillRange(py, s0, s1, argb);
+            } else if(narrowInner > 0) {
+                //through the hole, a band on each side done one after the other
+                int s0 = solidStart(cx - narrowOuter), s1 = solidEnd(cx - wideInner);
+                for(int k = 0; k < SUBSAMPLES; k++) {
+                    accumulateOutside(cx - outer[k], cx - inner[k], 1.0 / SUBSAMPLES, s0, s1);
+                }
+                flushRow(py, argb, s0, s1);
+                fillRange(py, s0, s1, argb);
+                s0 = solidStart(cx + wideInner);
+                s1 = solidEnd(cx + narrowOuter);
+                for(int k = 0; k < SUBSAMPLES; k++) {
+                    accumulateOutside(cx + inner[k], cx + outer[k], 1.0 / SUBSAMPLES, s0, s1);
+                }
+                flushRow(py, argb, s0, s1);
+                fillRange(py, s0, s1, argb);
+            } else {
+                //the row where the hole starts or ends, rare enough to do the slow way
+                for(int k = 0; k < SUBSAMPLES; k++) {
+                    if(outer[k] > 0) accumulate(cx - outer[k], cx + outer[k], 1.0 / SUBSAMPLES);
+                    if(inner[k] > 0) accumulate(cx - inner[k], cx + inner[k], -1.0 / SUBSAMPLES);
+                }
+                flushRow(py, argb);
+            }
+        }
+    }
+
+    /**
+     * @return      true if a shape this big in world units is small enough to be a draft dot
+     */
+    private boolean isDot(double w, double h) {
+        return w * scale < DRAFT_DOT_SIZE && h * scale < DRAFT_DOT_SIZE;
+    }
+
+    /**
+     * draws the one pixel a point is in
+     */
+    private void dot(double px, double py, int argb) {
+        int x = (int)Math.floor(px);
+        int y = (int)Math.floor(py);
+        if(x < clipX0 || x >= clipX1 || y < clipY0 || y >= clipY1) return;
+        int i = y * width + x;
+        pixels[i] = blend(argb, pixels[i]);
+    }
+
+    /**
+     * @return      half the width of an ellipse at a distance dy from its center, 0 if outside it
+     */
+    private static double halfWidth(double dy, double rx, double ry) {
+        double t = dy / ry;
+        if(t <= -1 || t >= 1) return 0;
+        return rx * Math.sqrt(1 - t * t);
+    }
+
+    /**
+     * @return      how much of pixel row py is between y0 and y1, from 0 to 1
+     */
+    private static double overlap(int py, double y0, double y1) {
+        return Math.max(0, Math.min(py + 1, y1) - Math.max(py, y0));
+    }
+
+    /**
+     * @return      first pixel completely right of a
+     */
+    private static int solidStart(double a) {
+        return (int)Math.ceil(a);
+    }
+
+    /**
+     * @return      pixel after the last one completely left of b
+     */
+    private static int solidEnd(double b) {
+        return (int)Math.floor(b);
+    }
+
+    /**
+     * fills a box in pixel coordinates
+     */
+    private void fillBox(double x0, double y0, double x1, double y1, int argb) {
+        if(!antialiasing || draft) {
+            int r0 = Math.max(clipY0, pixelStart(y0));
+            int r1 = Math.min(clipY1, pixelStart(y1));
+            for(int py = r0; py < r1; py++) {
+                span(py, x0, x1, argb);
+            }
+            return;
+        }
+        int r0 = Math.max(clipY0, (int)Math.floor(y0));
+        int r1 = Math.min(clipY1, (int)Math.ceil(y1));
+        for(int py = r0; py < r1; py++) {
+            boxRow(py, x0, x1, overlap(py, y0, y1), argb);
+        }
+    }
+
+    /**
+     * fills one row of a box that covers wy of the row's height
+     */
+    private void boxRow(int py, double x0, double x1, double wy, int argb) {
+        if(wy >= 1) {
+            int s0 = solidStart(x0);
+            int s1 = solidEnd(x1);
+            accumulateOutside(x0, x1, 1, s0, s1);
+            flushRow(py, argb, s0, s1);
+            fillRange(py, s0, s1, argb);
+        } else {
+            accumulate(x0, x1, wy);
+            flushRow(py, argb);
+        }
+    }
+
+    /**
+     * like accumulate, but leaves out the pixels from s0 up to s1, which get filled whole instead
+     */
+    private void accumulateOutside(double a, double b, double weight, int s0, int s1) {
+        if(s0 >= s1) {
+            accumulate(a, b, weight);
+            return;
+        }
+        accumulate(a, Math.min(b, s0), weight);
+        accumulate(Math.max(a, s1), b, weight);
+    }
+
+    /**
+     * adds weight times how much of each pixel is between a and b to the row being built.
+     * Negative weights take coverage away, for cutting holes.
+     */
+    private void accumulate(double a, double b, double weight) {
+        a = Math.max(a, clipX0);
+        b = Math.min(b, clipX1);
+        if(b <= a) return;
+        int ia = (int)Math.floor(a);
+        int ib = Math.min((int)Math.ceil(b), clipX1) - 1;
+        float w = (float)weight;
+        if(ia == ib) {
+            cov[ia - clipX0] += w * (b - a);
+        } else {
+            cov[ia - clipX0] += w * (ia + 1 - a);
+            for(int i = ia + 1; i < ib; i++) cov[i - clipX0] += w;
+            cov[ib - clipX0] += w * (b - ib);
+        }
+        covMin = Math.min(covMin, ia);
+        covMax = Math.max(covMax, ib);
+    }
+
+    /**
+     * blends the partly covered pixels built with accumulate onto row py, then empties the row
+     */
+    private void flushRow(int py, int argb) {
+        flushRow(py, argb, 0, 0);
+    }
+
+    /**
+     * like flushRow, but doesn't look at pixels s0 up to s1 since nothing was accumulated there
+     */
+    private void flushRow(int py, int argb, int s0, int s1) {
+        if(s0 < s1) {
+            flushPixels(py, argb, covMin, Math.min(covMax, s0 - 1));
+            flushPixels(py, argb, Math.max(covMin, s1), covMax);
+        } else {
+            flushPixels(py, argb, covMin, covMax);
+        }
+        covMin = Integer.MAX_VALUE;
+        covMax = -1;
+    }
+
+    private void flushPixels(int py, int argb, int from, int to) {
+        int row = py * width;
+        boolean opaque = (argb >>> 24) == 255;
+        for(int x = from; x <= to; x++) {
+            float c = cov[x - clipX0];
+            if(c == 0) continue;
+            cov[x - clipX0] = 0;
+            if(c <= 0.002f) continue;
+            int i = row + x;
+            if(c >= 0.998f) {
+                pixels[i] = opaque ? argb : blend(argb, pixels[i]);
+            } else {
+                pixels[i] = blend(fade(argb, c), pixels[i]);
+            }
+        }
+    }
+
+    /**
+     * fills whole pixels c0 up to c1 of row py
+     */
+    private void fillRange(int py, int c0, int c1, int argb) {
+        c0 = Math.max(c0, clipX0);
+        c1 = Math.min(c1, clipX1);
+        if(c0 >= c1) return;
+        int row = py * width;
+        SpanKernels.blendFill(pixels, row + c0, row + c1, argb);
+    }
+
+    /**
+     * fills the pixels of one row whose centers are between x0 and x1
+     */
+    private void span(int py, double x0, double x1, int argb) {
+        fillRange(py, pixelStart(x0), pixelStart(x1), argb);
+    }
+
+    /**
+     * @return      a premultiplied color with its alpha scaled by c
+     */
+    private static int fade(int argb, float c) {
+        int k = (int)(c * 256 + 0.5f);
+        int ag = ((argb >>> 8) & 0x00ff00ff) * k + 0x00800080;
+        int rb = (argb & 0x00ff00ff) * k + 0x00800080;
+        return ((ag >>> 8) & 0x00ff00ff) << 8 | ((rb >>> 8) & 0x00ff00ff);
+    }
+
+    /**
+     * @return      the first pixel whose center is at or after v
+     */
+    private static int pixelStart(double v) {
+        return (int)Math.ceil(v - 0.5);
+    }
+
+    /**
+     * draws a premultiplied color over another one
+     *
+     * @param src   the color on top
+     * @param dst   the color underneath
+     * @return      the blended color
+     */
+    public static int blend(int src, int dst) {
+        return SpanKernels.blend(src, dst);
+    }
+
+    /**
+     * @param c     a JavaFX color
+     * @return      the color as a premultiplied ARGB int
+     */
+    public int toArgb(Color c) {
+        if(c != lastColor) {
+            lastColor = c;
+            lastArgb = premultiply(c);
+        }
+        return lastArgb;
+    }
+
+    /**
+     * @param c     a JavaFX color
+     * @return      the color as a premultiplied ARGB int
+     */
+    public static int premultiply(Color c) {
+        double o = c.getOpacity();
+        int a = (int)Math.round(o * 255);
+        int r = (int)Math.round(c.getRed() * o * 255);
+        int g = (int)Math.round(c.getGreen() * o * 255);
+        int b = (int)Math.round(c.getBlue() * o * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * compares two rasters pixel by pixel, e.g. against another way of drawing the same thing
+     *
+     * @param other         the Raster to compare with, has to be the same size
+     * @param tolerance     how far apart a channel can be and still count as the same, 0 to 255
+     * @return              how many pixels are further apart than the tolerance
+     */
+    public int countDifferences(Raster other, int tolerance) {
+        if(other.width != width || other.height != height) throw new IllegalArgumentException("Rasters are different sizes.");
+        int count = 0;
+        for(int i = 0; i < pixels.length; i++) {
+            int p = pixels[i];
+            int q = other.pixels[i];
+            if(p == q) continue;
+            for(int shift = 0; shift < 32; shift += 8) {
+                if(Math.abs(((p >>> shift) & 0xff) - ((q >>> shift) & 0xff)) > tolerance) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * saves the raster as a PNG. Only uses java.awt images, so it works without a screen.
+     *
+     * @param file  where to save it
+     * @throws IOException if the file can't be written
+     */
+    public void writePng(File file) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+        SpanKernels.copy(pixels, 0, data, 0, pixels.length);
+        ImageIO.write(img, "png", file);
+    }
+
+    /**
+     * @return      the pixels, row by row, premultiplied ARGB
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return      width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return      height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+}
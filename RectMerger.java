@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Optional pass over the sketch that keeps a second list of shapes to draw,
+ * where each run of same styled rectangles next to each other in the drawing
+ * order is replaced by one RectUnion. Generated documents are often grids of
+ * rectangles that touch, which the ShapeBatcher can't batch since their
+ * outlines overlap, so this cuts the number of fills and strokes a lot.
+ *
+ * The sketch itself still has every rectangle on its own, so undo takes them
+ * out one at a time. Since undo always takes out the newest shape, keeping
+ * the list up to date only ever touches its last entry.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class RectMerger implements ShapeListener
+{
+    private final List<Shape> shapes;
+    private final ArrayList<Shape> merged = new ArrayList<Shape>();
+
+    /**
+     * Constructor for RectMerger
+     *
+     * @param shapes    all shapes, bottom to top
+     */
+    public RectMerger(List<Shape> shapes) {
+        this.shapes = shapes;
+        rebuild();
+    }
+
+    /**
+     * makes the merged list again from scratch
+     */
+    public void rebuild() {
+        merged.clear();
+        for(int i = 0; i < shapes.size(); i++) append(shapes.get(i));
+    }
+
+    /**
+     * @param s     the shape that was added on top
+     */
+    public void shapeAdded(Shape s) {
+        append(s);
+    }
+
+    /**
+     * @param s     the shape that was removed, always the newest one
+     */
+    public void shapeRemoved(Shape s) {
+        int last = merged.size() - 1;
+        Shape top = last < 0 ? null : merged.get(last);
+        if(s.equals(top)) {
+            merged.remove(last);
+        } else if(top instanceof RectUnion && s.equals(((RectUnion)top).get(((RectUnion)top).size() - 1))) {
+            RectUnion u = (RectUnion)top;
+            u.removeLast();
+            if(u.size() == 1) merged.set(last, u.get(0));
+        } else {
+            //something other than the newest shape went, start over
+            rebuild();
+        }
+    }
+
+    /**
+     * shapes that moved may not fit their runs anymore, so the list gets made again
+     *
+     * @param x     left edge of the changed area in world coordinates
+     * @param y     top edge of the changed area in world coordinates
+     * @param w     width of the changed area
+     * @param h     height of the changed area
+     */
+    public void shapesChanged(double x, double y, double w, double h) {
+        rebuild();
+    }
+
+    /**
+     * one rebuild for the whole move, instead of one for where the shapes were and one
+     * for where they went
+     *
+     * @param moved     the shapes, already at their new spot
+     * @param x         left edge of the box around them before the move
+     * @param y         top edge of that box
+     * @param w         width of that box
+     * @param h         height of that box
+     * @param dx        how far they moved right
+     * @param dy        how far they moved down
+     */
+    public void shapesMoved(Collection<Shape> moved, double x, double y, double w, double h, double dx, double dy) {
+        rebuild();
+    }
+
+    /**
+     * adds a shape to the end of the merged list, joining it onto the run below if it can
+     */
+    private void append(Shape s) {
+        int last = merged.size() - 1;
+        if(last >= 0 && s instanceof Rectangle && RectUnion.canMerge((Rectangle)s)) {
+            Rectangle r = (Rectangle)s;
+            Shape top = merged.get(last);
+            if(top instanceof RectUnion && ((RectUnion)top).tryAdd(r)) return;
+            if(top instanceof Rectangle && top.sameStyle(r) && RectUnion.canMerge((Rectangle)top)) {
+                RectUnion u = new RectUnion((Rectangle)top);
+                if(u.tryAdd(r)) {
+                    merged.set(last, u);
+                    return;
+                }
+            }
+        }
+        merged.add(s);
+    }
+
+    /**
+     * @return      the shapes to draw, bottom to top, with runs merged. Stays the same list as shapes change.
+     */
+    public List<Shape> getShapes() {
+        return merged;
+    }
+
+    /**
+     * @return      how many fills and strokes drawing the sketch one shape at a time takes
+     */
+    public long getDrawCallsBefore() {
+        return countDrawCalls(shapes);
+    }
+
+    /**
+     * @return      how many fills and strokes drawing the merged list takes
+     */
+    public long getDrawCallsAfter() {
+        return countDrawCalls(merged);
+    }
+
+    /**
+     * @return      one fill per shape, plus a stroke if it has an outline
+     */
+    private static long countDrawCalls(List<Shape> list) {
+        long n = 0;
+        for(int i = 0; i < list.size(); i++) n += list.get(i).getLineWidth() > 0 ? 2 : 1;
+        return n;
+    }
+
+    /**
+     * @return      stats about the merging
+     */
+    public String toString() {
+        long before = getDrawCallsBefore();
+        long after = getDrawCallsAfter();
+        long percent = before == 0 ? 0 : Math.round(100.0 * (before - after) / before);
+        return "RectMerger: shapes = " + shapes.size() + " -> " + merged.size() + "  draw calls = " + before + " -> " + after + " (" + percent + "% fewer)";
+    }
+}
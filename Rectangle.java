@@ -38,6 +38,21 @@ public class Rectangle extends Shape
         super(siz, fillColor, borderColor, pos, lineWidth);
     }
     
+    /**
+     *  Constructor for another copy of a Rectangle that already exists, it keeps that one's id
+     *  
+     *  @param siz              Vector size of the Rectangle
+     *  @param fillColor        the fill color of the Rectangle
+     *  @param borderColor      the border color of the Rectangle
+     *  @param pos              Vector position of the Rectangle
+     *  @param lineWidth        stroke thickness of the Shape
+     *  @param id               the id of the Rectangle this is a copy of
+     */
+    public Rectangle(Vector siz, Color fillColor, Color borderColor, Vector pos, int lineWidth, int id)
+    {
+        super(siz, fillColor, borderColor, pos, lineWidth, id);
+    }
+    
     
     /**
      * draws the Rectangle
@@ -48,13 +63,112 @@ public class Rectangle extends Shape
      * @version     1.00
      */
     public void draw(GraphicsContext gc)
+    {
+       draw(gc, pos.getX(), pos.getY(), siz.getX(), siz.getY(), fillColor, borderColor, lineWidth);
+    }
+    
+    
+    /**
+     * draws a rectangle that isn't an object, like one kept in a ShapeStore
+     * 
+     * @param gc            GraphicsContext to draw onto
+     * @param x             left edge
+     * @param y             top edge
+     * @param w             width
+     * @param h             height
+     * @param fillColor     the fill color
+     * @param borderColor   the border color
+     * @param lineWidth     stroke thickness, 0 for no border
+     */
+    public static void draw(GraphicsContext gc, double x, double y, double w, double h, Color fillColor, Color borderColor, int lineWidth)
     {
        gc.setFill(fillColor);
-       gc.fillRect(pos.getX(),pos.getY(), siz.getX(), siz.getY());
+       gc.fillRect(x, y, w, h);
        
+       if(lineWidth <= 0) return;
        gc.setLineWidth(lineWidth);
        gc.setStroke(borderColor);
-       gc.strokeRect(pos.getX(),pos.getY(), siz.getX(), siz.getY());
+       gc.strokeRect(x, y, w, h);
+    }
+    
+    
+    /**
+     * draws the Rectangle into a Raster, works on any thread
+     * 
+     * @param r     the Raster to draw into
+     */
+    public void draw(Raster r)
+    {
+       draw(r, pos.getX(), pos.getY(), siz.getX(), siz.getY(), fillColor, borderColor, lineWidth);
+    }
+    
+    
+    /**
+     * draws a rectangle that isn't an object into a Raster, works on any thread
+     * 
+     * @param r             the Raster to draw into
+     * @param x             left edge
+     * @param y             top edge
+     * @param w             width
+     * @param h             height
+     * @param fillColor     the fill color
+     * @param borderColor   the border color
+     * @param lineWidth     stroke thickness, 0 for no border
+     */
+    public static void draw(Raster r, double x, double y, double w, double h, Color fillColor, Color borderColor, int lineWidth)
+    {
+       r.fillRect(x, y, w, h, fillColor);
+       if(lineWidth <= 0) return;
+       r.strokeRect(x, y, w, h, lineWidth, borderColor);
+    }
+    
+    
+    /**
+     * adds the outline of the Rectangle to the current path
+     * 
+     * @param gc    GraphicsContext the path is being built on
+     */
+    public void appendPath(GraphicsContext gc)
+    {
+       gc.rect(pos.getX(), pos.getY(), siz.getX(), siz.getY());
+    }
+    
+    
+    /**
+     * gives the part of the Rectangle that nothing shows through
+     * 
+     * @param out   gets the box as {minX, minY, maxX, maxY}
+     * @return      false if the fill is see-through
+     */
+    public boolean getSolidArea(double[] out)
+    {
+       return getSolidArea(pos.getX(), pos.getY(), siz.getX(), siz.getY(), fillColor, borderColor, lineWidth, out);
+    }
+    
+    
+    /**
+     * gives the part of a rectangle that isn't an object that nothing shows through
+     * 
+     * @param x             left edge
+     * @param y             top edge
+     * @param w             width
+     * @param h             height
+     * @param fillColor     the fill color
+     * @param borderColor   the border color
+     * @param lineWidth     stroke thickness
+     * @param out           gets the box as {minX, minY, maxX, maxY}
+     * @return              false if the fill is see-through
+     */
+    public static boolean getSolidArea(double x, double y, double w, double h, Color fillColor, Color borderColor, int lineWidth, double[] out)
+    {
+       if(fillColor.getOpacity() < 1) return false;
+       //an opaque border hides what's under it too, half of it sits outside the fill
+       double grow = lineWidth > 0 && borderColor.getOpacity() >= 1 ? lineWidth / 2.0 : 0;
+       out[0] = x - grow;
+       out[1] = y - grow;
+       out[2] = x + w + grow;
+       out[3] = y + h + grow;
+       return true;
     }
     
     
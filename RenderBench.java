@@ -0,0 +1,319 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.input.MouseButton;
+import javafx.scene.paint.Color;
+import javafx.scene.robot.Robot;
+import javafx.stage.Stage;
+import java.util.Random;
+
+/**
+ * The checks and timings for the drawing code, kept out of the classes they
+ * measure. Each one makes up its own document from a fixed seed, so runs can
+ * be compared with each other. Run it with the name of the check:
+ *
+ *   batching   draws tiles with and without ShapeBatcher and compares
+ *   pulse      counts what whole pulses allocate while panning and hovering
+ *   parallel   draws a Raster on one thread and on every core and compares
+ *   reference  draws shapes with Raster and with JavaFX and compares
+ *
+ * Anything timed through JavaFX is timed up to a snapshot, since a canvas
+ * only records what to draw and the real drawing happens later.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class RenderBench
+{
+    //frames pulse lets go by before it starts counting, so the cache and the JIT settle
+    private static final int WARM_UP_FRAMES = 120;
+    private static final int MEASURED_FRAMES = 600;
+    //how many shades a channel of a Raster pixel can be off from JavaFX's, away from edges
+    private static final int REFERENCE_TOLERANCE = 2;
+
+    private RenderBench() {
+    }
+
+    /**
+     * runs one check
+     *
+     * @param args  the name of the check
+     */
+    public static void main(String[] args) {
+        String check = args.length > 0 ? args[0] : "";
+        switch(check) {
+            case "batching":
+                Platform.startup(() -> {
+                    batching();
+                    Platform.exit();
+                });
+                break;
+            case "pulse":
+                if(!RenderLoop.canCountAllocations()) {
+                    System.out.println("This JVM can't count allocations per thread.");
+                    return;
+                }
+                Platform.startup(RenderBench::pulse);
+                break;
+            case "parallel":
+                parallel();
+                break;
+            case "reference":
+                Platform.startup(() -> {
+                    reference();
+                    Platform.exit();
+                });
+                break;
+            default:
+                System.out.println("Usage: java RenderBench batching|pulse|parallel|reference");
+        }
+    }
+
+    /**
+     * compares drawing a made up document into tiles one shape at a time and in batches.
+     * Prints how long each way took to draw every tile, best of a few runs, how many
+     * batches it took, and how many pixels came out different, which should be 0.
+     */
+    private static void batching() {
+        //a sketch only uses a few styles, and shapes of a style tend to be drawn one after
+        //another in the same part of the page, like a row of boxes
+        Random random = new Random(1);
+        Color[] fills = {Color.WHITE, Color.LIGHTBLUE, Color.ORANGE, Color.LIGHTGREEN, Color.PINK, Color.GOLD};
+        ShapeStore shapes = new ShapeStore();
+        Color fill = fills[0];
+        int lineWidth = 1;
+        double cx = 0, cy = 0;
+        for(int i = 0; i < 20000; i++) {
+            if(i % 20 == 0) {
+                fill = fills[random.nextInt(fills.length)];
+                lineWidth = random.nextInt(4);
+                cx = random.nextDouble() * 3700;
+                cy = random.nextDouble() * 2700;
+            }
+            Vector siz = new Vector(8 + random.nextDouble() * 60, 8 + random.nextDouble() * 60);
+            Vector pos = new Vector(cx + random.nextDouble() * 300, cy + random.nextDouble() * 300);
+            if(random.nextInt(4) == 0) shapes.add(new Ellipse(siz, fill, Color.BLACK, pos, lineWidth));
+            else shapes.add(new Rectangle(siz, fill, Color.BLACK, pos, lineWidth));
+        }
+
+        //every tile of the page at full size, drawn onto one canvas that gets thrown away
+        int size = TileCache.DEFAULT_TILE_SIZE;
+        GraphicsContext gc = new Canvas(size, size).getGraphicsContext2D();
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        ShapeBatcher batcher = null;
+        for(int run = 0; run < 6; run++) {
+            for(int batched = 0; batched < 2; batched++) {
+                TileCache tiles = new TileCache(size);
+                tiles.setBatching(batched == 1);
+                tiles.setSpriteCaching(false);
+                long t0 = System.nanoTime();
+                for(int row = 0; row * size < 3000; row++) {
+                    for(int col = 0; col * size < 4000; col++) {
+                        tiles.drawTile(gc, shapes, 1, col, row, 0, 0, Long.MAX_VALUE);
+                    }
+                }
+                best[batched] = Math.min(best[batched], System.nanoTime() - t0);
+                if(batched == 1) batcher = tiles.getBatcher();
+            }
+        }
+        System.out.println("one at a time ms = " + best[0] / 1000000 + "  batched ms = " + best[1] / 1000000);
+        System.out.println(batcher);
+
+        //the whole page at a quarter size both ways, then pixel by pixel
+        int[][] pixels = new int[2][];
+        for(int batched = 0; batched < 2; batched++) {
+            TileCache tiles = new TileCache(size);
+            tiles.setBatching(batched == 1);
+            Canvas page = new Canvas(1024, 768);
+            for(int row = 0; row * size < page.getHeight(); row++) {
+                for(int col = 0; col * size < page.getWidth(); col++) {
+                    tiles.drawTile(page.getGraphicsContext2D(), shapes, 0.25, col, row, col * size, row * size, Long.MAX_VALUE);
+                }
+            }
+            pixels[batched] = new int[1024 * 768];
+            page.snapshot(null, null).getPixelReader().getPixels(0, 0, 1024, 768, PixelFormat.getIntArgbInstance(), pixels[batched], 0, 1024);
+        }
+        int differ = 0;
+        for(int i = 0; i < pixels[0].length; i++) {
+            if(pixels[0][i] != pixels[1][i]) differ++;
+        }
+        System.out.println("pixels that differ = " + differ);
+    }
+
+    /**
+     * checks what a steady pan and moving the mouse over shapes allocate. Opens the
+     * sketch with a made up document, drags it back and forth with the right button
+     * over the same tiles, then sweeps the mouse across the shapes so every pulse
+     * picks, and prints the bytes the whole pulses allocated once warmed up.
+     */
+    private static void pulse() {
+        Stage stage = new Stage();
+        MacroHardSketch app = new MacroHardSketch();
+        try {
+            app.start(stage);
+        } catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+        Random random = new Random(1);
+        for(int i = 0; i < 5000; i++) {
+            Vector siz = new Vector(10 + random.nextDouble() * 150, 10 + random.nextDouble() * 150);
+            Vector pos = new Vector(random.nextDouble() * 1600 - 400, random.nextDouble() * 1200 - 300);
+            Color fill = Color.hsb(random.nextDouble() * 360, 0.7, 0.9);
+            if(random.nextBoolean()) app.addShape(new Rectangle(siz, fill, Color.BLACK, pos, random.nextInt(6)));
+            else app.addShape(new Ellipse(siz, fill, Color.BLACK, pos, random.nextInt(6)));
+        }
+        RenderLoop loop = app.getRenderLoop();
+        //real mouse input, so the events go through the same handlers and pacer as a user's
+        Robot robot = new Robot();
+        double x0 = stage.getX() + 400;
+        double y0 = stage.getY() + 300;
+        robot.mouseMove(x0, y0);
+        new AnimationTimer() {
+            //0 lets the minimap and the first tiles finish, 1 pans, 2 moves the mouse over the shapes
+            private int phase = 0;
+            private int frame = 0;
+            private long worst = 0;
+            private long total = 0;
+            private double x = x0;
+
+            @Override
+            public void handle(long now) {
+                if(phase == 0) {
+                    if(++frame < WARM_UP_FRAMES) return;
+                    robot.mousePress(MouseButton.SECONDARY);
+                    phase = 1;
+                    frame = 0;
+                    return;
+                }
+                //20 frames right then 20 left, the same tiles every sweep
+                x += frame % 40 < 20 ? 8 : -8;
+                robot.mouseMove(x, y0);
+                if(frame >= WARM_UP_FRAMES) {
+                    long bytes = loop.getLastPulseAllocatedBytes();
+                    worst = Math.max(worst, bytes);
+                    total += bytes;
+                }
+                if(++frame < WARM_UP_FRAMES + MEASURED_FRAMES) return;
+                System.out.println((phase == 1 ? "pan" : "hover") + ": pulses = " + MEASURED_FRAMES + "  bytes allocated = " + total
+                    + "  per pulse = " + total / MEASURED_FRAMES + "B  worst pulse = " + worst + "B");
+                worst = 0;
+                total = 0;
+                frame = 0;
+                if(phase++ == 1) {
+                    //letting go goes back to full quality, the warm up covers that redraw
+                    robot.mouseRelease(MouseButton.SECONDARY);
+                    return;
+                }
+                stop();
+                System.out.println(loop);
+                System.out.println(app.getShapes());
+                Platform.exit();
+            }
+        }.start();
+    }
+
+    /**
+     * checks that drawing on every core gives the same pixels as drawing on one thread,
+     * with a made up document of overlapping, half see through shapes. Prints how many
+     * pixels differ, which should be 0, and how long each way took.
+     */
+    private static void parallel() {
+        Random random = new Random(1);
+        Shape[] shapes = new Shape[20000];
+        for(int i = 0; i < shapes.length; i++) {
+            Vector siz = new Vector(4 + random.nextDouble() * 200, 4 + random.nextDouble() * 200);
+            Vector pos = new Vector(random.nextDouble() * 2000 - 100, random.nextDouble() * 1500 - 100);
+            Color fill = Color.hsb(random.nextDouble() * 360, 0.7, 0.9, 0.5);
+            int lineWidth = random.nextInt(6);
+            if(random.nextBoolean()) shapes[i] = new Rectangle(siz, fill, Color.BLACK, pos, lineWidth);
+            else shapes[i] = new Ellipse(siz, fill, Color.BLACK, pos, lineWidth);
+        }
+        double scale = 1.3;
+        double offX = 15.5;
+        double offY = -7.25;
+
+        Raster serial = new Raster(2400, 1800);
+        long t0 = System.nanoTime();
+        serial.setTransform(scale, -offX * scale, -offY * scale);
+        serial.clear(Color.WHITE);
+        for(int i = 0; i < shapes.length; i++) shapes[i].draw(serial);
+        long t1 = System.nanoTime();
+
+        Raster parallel = new Raster(2400, 1800);
+        new ParallelRasterizer().render(parallel, shapes, scale, offX, offY, () -> false);
+        long t2 = System.nanoTime();
+
+        System.out.println("pixels that differ = " + serial.countDifferences(parallel, 0));
+        System.out.println("one thread ms = " + (t1 - t0) / 1000000 + "  every core ms = " + (t2 - t1) / 1000000);
+        System.out.println("span kernels vectorized = " + SpanKernels.isVectorized());
+    }
+
+    /**
+     * checks Raster against JavaFX drawing the same shapes with the same transform, opaque
+     * and half see through, at a few zooms. Away from edges every channel should be within
+     * REFERENCE_TOLERANCE shades of JavaFX's, so the count printed for that should be 0. Edge
+     * pixels are only counted, JavaFX works out how much of a pixel a shape covers its own way.
+     */
+    private static void reference() {
+        int w = 800;
+        int h = 600;
+        for(double scale : new double[] {1, 1.3, 0.37}) {
+            for(int seeThrough = 0; seeThrough < 2; seeThrough++) {
+                Random random = new Random(3);
+                Shape[] shapes = new Shape[400];
+                for(int i = 0; i < shapes.length; i++) {
+                    Vector siz = new Vector(2 + random.nextDouble() * 150, 2 + random.nextDouble() * 150);
+                    Vector pos = new Vector(random.nextDouble() * 700 - 50, random.nextDouble() * 500 - 50);
+                    Color fill = Color.hsb(random.nextDouble() * 360, 0.7, 0.9, seeThrough == 1 ? 0.5 : 1);
+                    int lineWidth = random.nextInt(6);
+                    if(random.nextBoolean()) shapes[i] = new Rectangle(siz, fill, Color.BLACK, pos, lineWidth);
+                    else shapes[i] = new Ellipse(siz, fill, Color.BLACK, pos, lineWidth);
+                }
+                double tx = 10.25;
+                double ty = -3.5;
+
+                Raster raster = new Raster(w, h);
+                raster.setTransform(scale, tx, ty);
+                raster.clear(Color.WHITE);
+                for(int i = 0; i < shapes.length; i++) shapes[i].draw(raster);
+
+                Canvas canvas = new Canvas(w, h);
+                GraphicsContext gc = canvas.getGraphicsContext2D();
+                gc.setFill(Color.WHITE);
+                gc.fillRect(0, 0, w, h);
+                gc.setTransform(scale, 0, 0, scale, tx, ty);
+                for(int i = 0; i < shapes.length; i++) shapes[i].draw(gc);
+                Raster fx = new Raster(w, h);
+                canvas.snapshot(null, null).getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbPreInstance(), fx.getPixels(), 0, w);
+
+                //a pixel is on an edge if anything around it is a different color in either picture,
+                //edges get copied over from JavaFX's picture so only the rest gets compared
+                int[] p = raster.getPixels();
+                int[] q = fx.getPixels();
+                Raster inside = new Raster(w, h);
+                int[] r = inside.getPixels();
+                int edges = 0;
+                for(int y = 0; y < h; y++) {
+                    for(int x = 0; x < w; x++) {
+                        int i = y * w + x;
+                        boolean edge = x == 0 || y == 0 || x == w - 1 || y == h - 1;
+                        for(int dy = -1; dy <= 1 && !edge; dy++) {
+                            for(int dx = -1; dx <= 1 && !edge; dx++) {
+                                int j = i + dy * w + dx;
+                                edge = p[j] != p[i] || q[j] != q[i];
+                            }
+                        }
+                        r[i] = edge ? q[i] : p[i];
+                        if(edge) edges++;
+                    }
+                }
+                System.out.println("scale = " + scale + (seeThrough == 1 ? "  half see through" : "  opaque")
+                    + "  off edges more than " + REFERENCE_TOLERANCE + " shades apart = " + inside.countDifferences(fx, REFERENCE_TOLERANCE)
+                    + "  edge pixels = " + edges + ", more than " + REFERENCE_TOLERANCE + " apart = " + raster.countDifferences(fx, REFERENCE_TOLERANCE)
+                    + ", more than 32 apart = " + raster.countDifferences(fx, 32));
+            }
+        }
+    }
+}
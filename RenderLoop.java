@@ -0,0 +1,175 @@
+import javafx.animation.AnimationTimer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Fills in the views a bit at a time. Every JavaFX pulse it draws pending
+ * tiles, first view first, until its time budget runs out, then lets the application
+ * thread get back to handling input. Whatever's left gets done on the next
+ * pulse, so a huge document fills in over a few frames instead of freezing
+ * the window.
+ *
+ * A pulse shouldn't allocate anything once things have warmed up, garbage
+ * from every frame adds up to collector pauses that show as hitches. Where
+ * the JVM can count allocations per thread, the loop keeps track of how many
+ * bytes the JavaFX thread allocated from one pulse to the next. That's the
+ * whole pulse and not just the drawing in here: the input events, the other
+ * timers (the FramePacer's repaint and hover picking) and the scene graph's
+ * own layout and sync all count. RenderBench pulse drives the sketch with
+ * the mouse and prints what the pulses allocated.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class RenderLoop extends AnimationTimer
+{
+    public static final double DEFAULT_BUDGET_MILLIS = 8;
+
+    //null if this JVM can't count allocations per thread
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private TileCache tiles;
+    private List<SketchView> views;
+    private long budgetNanos;
+
+    //stats
+    private long pulsesUsed;
+    private long passesFinished;
+    private long lastFrameCulled;
+    private long lastPulseAllocated = -1;
+    private long allocated;
+    //the JavaFX thread's allocation counter when this loop last ran
+    private long allocatedAtLastPulse = -1;
+
+    /**
+     * Constructor for RenderLoop
+     *
+     * @param tiles     the tile cache the views draw from
+     * @param views     the views to fill in, in order
+     */
+    public RenderLoop(TileCache tiles, List<SketchView> views) {
+        this.tiles = tiles;
+        this.views = views;
+        setBudgetMillis(DEFAULT_BUDGET_MILLIS);
+    }
+
+    /**
+     * called by JavaFX once per pulse, draws until the budget is used up
+     *
+     * @param now       timestamp of the pulse in nanoseconds
+     */
+    @Override
+    public void handle(long now) {
+        long bytes = allocatedBytes();
+        if(bytes >= 0 && allocatedAtLastPulse >= 0) {
+            lastPulseAllocated = bytes - allocatedAtLastPulse;
+            allocated += lastPulseAllocated;
+        }
+        allocatedAtLastPulse = bytes;
+        if(!hasPending()) return;
+        pulsesUsed++;
+        long culled = tiles.getCuller().getCulled();
+        long deadline = System.nanoTime() + budgetNanos;
+        boolean finished = true;
+        for(int i = 0; i < views.size() && finished; i++) {
+            if(views.get(i).hasPending()) finished = views.get(i).drawPending(deadline);
+        }
+        if(finished && !hasPending()) passesFinished++;
+        lastFrameCulled = tiles.getCuller().getCulled() - culled;
+    }
+
+    /**
+     * @return      true if any view has tiles waiting
+     */
+    private boolean hasPending() {
+        for(int i = 0; i < views.size(); i++) {
+            if(views.get(i).hasPending()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return      bytes allocated by this thread so far, -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        if(THREADS == null) return -1;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return      true if the JVM can count allocations per thread, if not the allocation stats stay at -1 and 0
+     */
+    public static boolean canCountAllocations() {
+        return THREADS != null;
+    }
+
+    /**
+     * @return      the JVM's per thread allocation counter, null if it doesn't have one
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)threads;
+        if(!counter.isThreadAllocatedMemorySupported()) return null;
+        counter.setThreadAllocatedMemoryEnabled(true);
+        return counter;
+    }
+
+    /**
+     * @param millis    how long each pulse can spend drawing
+     */
+    public void setBudgetMillis(double millis) {
+        if(millis <= 0) throw new IllegalArgumentException("Render budget must be positive.");
+        budgetNanos = (long)(millis * 1000000);
+    }
+
+    /**
+     * @return      how long each pulse can spend drawing, in milliseconds
+     */
+    public double getBudgetMillis() {
+        return budgetNanos / 1000000.0;
+    }
+
+    /**
+     * @return      how many pulses did some drawing
+     */
+    public long getPulsesUsed() {
+        return pulsesUsed;
+    }
+
+    /**
+     * @return      how many times everything pending got drawn
+     */
+    public long getPassesFinished() {
+        return passesFinished;
+    }
+
+    /**
+     * @return      how many shape draws were skipped by occlusion culling on the last pulse that drew
+     */
+    public long getLastFrameCulled() {
+        return lastFrameCulled;
+    }
+
+    /**
+     * @return      bytes the JavaFX thread allocated over the last whole pulse, -1 if the JVM can't tell
+     */
+    public long getLastPulseAllocatedBytes() {
+        return lastPulseAllocated;
+    }
+
+    /**
+     * @return      bytes the JavaFX thread allocated over all pulses since this loop started, 0 if the JVM can't tell
+     */
+    public long getAllocatedBytes() {
+        return allocated;
+    }
+
+    /**
+     * @return      stats about the RenderLoop
+     */
+    public String toString() {
+        return "RenderLoop: budget = " + getBudgetMillis() + "ms  pulses = " + pulsesUsed + "  passes = " + passesFinished + "  culled last frame = " + lastFrameCulled
+            + "  allocated last pulse = " + lastPulseAllocated + "B";
+    }
+}
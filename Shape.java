@@ -59,6 +59,28 @@ public abstract class Shape implements Drawable
         nextId = nextId + 1;
     }
     
+    /**
+     *  Shape constructor for another copy of a shape that already exists, it keeps
+     *  that shape's id instead of getting a new one.
+     *  
+     *  @param siz              Vector size of the shape
+     *  @param fillColor        the fill color of the Shape
+     *  @param borderColor      the border color of the Shape
+     *  @param pos              Vector position of the Shape
+     *  @param lineWidth        stroke thickness of the Shape
+     *  @param id               the id of the shape this is a copy of
+     */
+    protected Shape(Vector siz, Color fillColor, Color borderColor, Vector pos, int lineWidth, int id)
+    {
+        this.siz = siz;
+        this.fillColor = fillColor;
+        this.borderColor = borderColor;
+        this.pos = pos;
+        this.lineWidth = lineWidth;
+        
+        myId = id;
+    }
+    
     /**
      *  @return     the id of the shape
      *  @author     Zachary Sousa
@@ -69,8 +91,174 @@ public abstract class Shape implements Drawable
         return myId;
     }
     
+    /**
+     *  @return     how far the stroke and anti-aliasing bleed past pos and siz
+     *  @author     Zachary Sousa
+     *  @version    1.00
+     */
+    public double getPadding()
+    {
+        return lineWidth / 2.0 + 1;
+    }
+    
+    /**
+     *  @return     left edge of the painted area, stroke included
+     */
+    public double getMinX()
+    {
+        return pos.getX() - getPadding();
+    }
+    
+    /**
+     *  @return     top edge of the painted area, stroke included
+     */
+    public double getMinY()
+    {
+        return pos.getY() - getPadding();
+    }
+    
+    /**
+     *  @return     right edge of the painted area, stroke included
+     */
+    public double getMaxX()
+    {
+        return pos.getX() + siz.getX() + getPadding();
+    }
+    
+    /**
+     *  @return     bottom edge of the painted area, stroke included
+     */
+    public double getMaxY()
+    {
+        return pos.getY() + siz.getY() + getPadding();
+    }
+    
+    /**
+     *  Checks if anything this shape paints could land inside a rectangle.
+     *  
+     *  @param x    left edge of the rectangle
+     *  @param y    top edge of the rectangle
+     *  @param w    width of the rectangle
+     *  @param h    height of the rectangle
+     *  @return     true if the painted area overlaps the rectangle
+     */
+    public boolean intersects(double x, double y, double w, double h)
+    {
+        return getMaxX() > x && getMinX() < x + w && getMaxY() > y && getMinY() < y + h;
+    }
+    
+    /**
+     *  Checks if a point is on the shape, border included. Good enough for boxes,
+     *  override it for anything rounder.
+     *  
+     *  @param x    x of the point in world coordinates
+     *  @param y    y of the point in world coordinates
+     *  @return     true if the point is on the fill or the border
+     */
+    public boolean contains(double x, double y)
+    {
+        return boxContains(x, y, pos.getX(), pos.getY(), siz.getX(), siz.getY(), lineWidth);
+    }
+    
+    /**
+     *  Checks if a point is on a box with a border, for shapes that aren't objects.
+     *  
+     *  @param px           x of the point in world coordinates
+     *  @param py           y of the point in world coordinates
+     *  @param x            left edge of the box
+     *  @param y            top edge of the box
+     *  @param w            width of the box
+     *  @param h            height of the box
+     *  @param lineWidth    stroke thickness of the border
+     *  @return             true if the point is on the fill or the border
+     */
+    public static boolean boxContains(double px, double py, double x, double y, double w, double h, int lineWidth)
+    {
+        double half = Math.max(0, lineWidth) / 2.0;
+        return px >= x - half && px <= x + w + half && py >= y - half && py <= y + h + half;
+    }
+    
+    /**
+     *  @return     the fill color of the shape
+     */
+    public Color getFillColor()
+    {
+        return fillColor;
+    }
+    
+    /**
+     *  @return     the border color of the shape
+     */
+    public Color getBorderColor()
+    {
+        return borderColor;
+    }
+    
+    /**
+     *  @return     the stroke thickness of the shape
+     */
+    public int getLineWidth()
+    {
+        return lineWidth;
+    }
+    
+    /**
+     *  Checks if another shape would be drawn with the exact same fill, border and stroke.
+     *  
+     *  @param s    the shape to compare with
+     *  @return     true if both shapes use the same style
+     */
+    public boolean sameStyle(Shape s)
+    {
+        return lineWidth == s.lineWidth && fillColor.equals(s.fillColor) && borderColor.equals(s.borderColor);
+    }
+    
+    /**
+     *  Shapes are the same shape if they have the same id, so a copy of a
+     *  stored shape equals the shape itself.
+     *  
+     *  @param o    the object to compare with
+     *  @return     true if o is a shape with the same id
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof Shape && ((Shape)o).myId == myId;
+    }
+    
+    /**
+     *  @return     the id, so equal shapes hash the same
+     */
+    @Override
+    public int hashCode()
+    {
+        return myId;
+    }
+    
     /**
      * Override this with drawing code. Pretty self explanatory.
      */
     public abstract void draw(GraphicsContext gc);
+    
+    /**
+     * Override this to give a box that the shape paints over completely, with no
+     * see-through pixels. Used to skip drawing shapes that are buried under it.
+     * 
+     * @param out   gets the box as {minX, minY, maxX, maxY}
+     * @return      false if the shape doesn't fully hide anything, out is left alone then
+     */
+    public abstract boolean getSolidArea(double[] out);
+    
+    /**
+     * Override this with drawing code for a Raster, should look the same as draw(GraphicsContext).
+     * Has to be safe to call off the JavaFX thread.
+     */
+    public abstract void draw(Raster r);
+    
+    /**
+     * Override this to add the outline of the shape to the current path, without
+     * touching fill, stroke or line width. Used to draw lots of same styled shapes
+     * in one go.
+     */
+    public abstract void appendPath(GraphicsContext gc);
 }
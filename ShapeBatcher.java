@@ -0,0 +1,297 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws shapes in batches that share the same fill, border and line width.
+ * A batch fills all its shapes and then strokes them, so the fill, stroke and
+ * line width only get set once per batch instead of once per shape. Each
+ * shape is still drawn with its own fillRect or fillOval, JavaFX has quick
+ * ways of drawing those that one path made of all of them would miss.
+ *
+ * A shape can only be pulled back into an earlier batch if it doesn't overlap
+ * anything drawn in between, or anything already in that batch (since a batch
+ * does all its fills before all its strokes). Overlapping counts anything
+ * within a pixel, for the anti-aliased edges. Shapes with no outline are only
+ * fills, so those can overlap others in their batch. That way the picture
+ * comes out exactly the same as drawing the shapes one at a time.
+ *
+ * Shapes too small to see properly can be queued with addDot() instead, they
+ * get batched the same way but are drawn as plain filled boxes (level of detail).
+ *
+ * Shapes are queued by their index in the list, everything gets read through
+ * ShapeStore's index accessors, so batching a ShapeStore never makes a shape.
+ *
+ * Usage: add() the shapes bottom to top, then flush().
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class ShapeBatcher
+{
+    //how many batches back a shape can be pulled, and how many shapes in a batch get checked
+    //for overlap before giving up and starting a new batch. Keeps adding a shape cheap.
+    private static final int LOOKBACK = 8;
+    private static final int MAX_OVERLAP_CHECKS = 128;
+
+    private ArrayList<Batch> batches = new ArrayList<Batch>();
+    private int batchCount = 0;
+    //the list the queued indexes are in, all of them since the last flush are from the same one
+    private List<Shape> shapes;
+    //outlines thinner than this, in world units, get left out
+    private double minStroke = 0;
+    //one pixel in world units, anti-aliasing can color a pixel past a shape's edge
+    private double pixelSize = 0;
+
+    //stats
+    private long shapesDrawn;
+    private long batchesDrawn;
+    private long dotsDrawn;
+
+    /**
+     * queues a shape, shapes have to be added bottom to top
+     *
+     * @param shapes    the shapes, the same list for everything until the next flush
+     * @param i         index of the shape to draw
+     */
+    public void add(List<Shape> shapes, int i) {
+        queue(shapes, i, null, 0);
+    }
+
+    /**
+     * queues a shape that will be drawn as a plain box in one color, for shapes that
+     * are only a pixel or so on screen. Shapes have to be added bottom to top.
+     *
+     * @param shapes    the shapes, the same list for everything until the next flush
+     * @param i         index of the shape to draw
+     * @param color     the color of the box
+     * @param minSize   smallest width and height of the box, so it covers at least a pixel
+     */
+    public void addDot(List<Shape> shapes, int i, Color color, double minSize) {
+        queue(shapes, i, color, minSize);
+    }
+
+    /**
+     * puts a shape in the furthest back batch it can go in without changing what ends up on screen
+     */
+    private void queue(List<Shape> shapes, int k, Color dotColor, double minSize) {
+        this.shapes = shapes;
+        //a pixel around it counts for overlapping, and a dot can be bigger than its shape
+        double minX = ShapeStore.getMinX(shapes, k) - pixelSize;
+        double minY = ShapeStore.getMinY(shapes, k) - pixelSize;
+        double maxX = Math.max(ShapeStore.getMaxX(shapes, k), ShapeStore.getX(shapes, k) + minSize) + pixelSize;
+        double maxY = Math.max(ShapeStore.getMaxY(shapes, k), ShapeStore.getY(shapes, k) + minSize) + pixelSize;
+        Color fill = ShapeStore.getFillColor(shapes, k);
+        Color border = ShapeStore.getBorderColor(shapes, k);
+        int lineWidth = ShapeStore.getLineWidth(shapes, k);
+
+        //no outline means only fills, and fills in one color look the same in any order
+        boolean fillOnly = dotColor != null || lineWidth == 0 || lineWidth < minStroke;
+        int stop = Math.max(0, batchCount - LOOKBACK);
+        for(int i = batchCount - 1; i >= stop; i--) {
+            Batch b = batches.get(i);
+            boolean match = b.matches(fill, border, lineWidth, dotColor);
+            //so shapes that are just a fill can pile up on each other in the same batch
+            if(match && fillOnly) {
+                b.add(k, minX, minY, maxX, maxY);
+                return;
+            }
+            if(b.overlaps(minX, minY, maxX, maxY)) break;
+            if(match) {
+                b.add(k, minX, minY, maxX, maxY);
+                return;
+            }
+        }
+        Batch b = nextBatch();
+        b.fill = fill;
+        b.border = border;
+        b.lineWidth = lineWidth;
+        b.dotColor = dotColor;
+        b.dotSize = minSize;
+        b.add(k, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * draws all the queued shapes and empties the queue
+     *
+     * @param gc    GraphicsContext to draw onto
+     */
+    public void flush(GraphicsContext gc) {
+        for(int i = 0; i < batchCount; i++) {
+            Batch b = batches.get(i);
+
+            if(b.dotColor != null) {
+                flushDots(gc, b);
+                continue;
+            }
+
+            //one shape at a time with fillRect and fillOval, one path for the lot is slower to draw
+            gc.setFill(b.fill);
+            for(int j = 0; j < b.count; j++) {
+                ShapeStore.fill(shapes, b.items[j], gc);
+            }
+            if(b.lineWidth > 0 && b.lineWidth >= minStroke) {
+                gc.setLineWidth(b.lineWidth);
+                gc.setStroke(b.border);
+                for(int j = 0; j < b.count; j++) {
+                    ShapeStore.stroke(shapes, b.items[j], gc);
+                }
+            }
+
+            shapesDrawn += b.count;
+            batchesDrawn++;
+            b.clear();
+        }
+        batchCount = 0;
+        shapes = null;
+    }
+
+    /**
+     * @param minStroke     outlines thinner than this in world units are skipped, 0 draws them all
+     */
+    public void setMinStroke(double minStroke) {
+        this.minStroke = minStroke;
+    }
+
+    /**
+     * @param pixelSize     how big a pixel is in world units, so shapes that only share an
+     *                      anti-aliased edge pixel count as overlapping. 0 only looks at the shapes.
+     */
+    public void setPixelSize(double pixelSize) {
+        this.pixelSize = pixelSize;
+    }
+
+    /**
+     * draws a batch of level of detail boxes with one fill color
+     */
+    private void flushDots(GraphicsContext gc, Batch b) {
+        gc.setFill(b.dotColor);
+        for(int j = 0; j < b.count; j++) {
+            int k = b.items[j];
+            gc.fillRect(ShapeStore.getX(shapes, k), ShapeStore.getY(shapes, k),
+                Math.max(ShapeStore.getWidth(shapes, k), b.dotSize), Math.max(ShapeStore.getHeight(shapes, k), b.dotSize));
+        }
+
+        shapesDrawn += b.count;
+        dotsDrawn += b.count;
+        batchesDrawn++;
+        b.clear();
+    }
+
+    /**
+     * @return      a cleared batch at the end of the list, reusing old ones
+     */
+    private Batch nextBatch() {
+        if(batchCount == batches.size()) batches.add(new Batch());
+        return batches.get(batchCount++);
+    }
+
+    /**
+     * @return      how many shapes were drawn since the last reset
+     */
+    public long getShapesDrawn() {
+        return shapesDrawn;
+    }
+
+    /**
+     * @return      how many batches were drawn since the last reset, each one costs one set of state changes
+     */
+    public long getBatchesDrawn() {
+        return batchesDrawn;
+    }
+
+    /**
+     * @return      how many of the drawn shapes were simplified to boxes since the last reset
+     */
+    public long getDotsDrawn() {
+        return dotsDrawn;
+    }
+
+    /**
+     * sets the stats back to 0
+     */
+    public void resetStats() {
+        shapesDrawn = 0;
+        batchesDrawn = 0;
+        dotsDrawn = 0;
+    }
+
+    /**
+     * @return      stats about the batching
+     */
+    public String toString() {
+        return "ShapeBatcher: shapes = " + shapesDrawn + "  batches = " + batchesDrawn + "  dots = " + dotsDrawn;
+    }
+
+    /**
+     * One run of same styled shapes by index, their boxes for overlap checks, and
+     * the box around all of them for quick ones.
+     */
+    private static class Batch
+    {
+        private int[] items = new int[16];
+        private double[] bounds = new double[64];
+        private int count;
+        private Color fill;
+        private Color border;
+        private int lineWidth;
+        private Color dotColor;
+        private double dotSize;
+        private double minX, minY, maxX, maxY;
+
+        private void add(int k, double x0, double y0, double x1, double y1) {
+            if(count == items.length) {
+                items = Arrays.copyOf(items, count * 2);
+                bounds = Arrays.copyOf(bounds, count * 8);
+            }
+            if(count == 0) {
+                minX = x0;
+                minY = y0;
+                maxX = x1;
+                maxY = y1;
+            } else {
+                minX = Math.min(minX, x0);
+                minY = Math.min(minY, y0);
+                maxX = Math.max(maxX, x1);
+                maxY = Math.max(maxY, y1);
+            }
+            items[count] = k;
+            bounds[count * 4] = x0;
+            bounds[count * 4 + 1] = y0;
+            bounds[count * 4 + 2] = x1;
+            bounds[count * 4 + 3] = y1;
+            count++;
+        }
+
+        /**
+         * @return      true if a shape in this style would be drawn the same way as the shapes in this batch
+         */
+        private boolean matches(Color fill, Color border, int lineWidth, Color color) {
+            if(dotColor == null || color == null) {
+                return dotColor == color && this.lineWidth == lineWidth && this.fill.equals(fill) && this.border.equals(border);
+            }
+            return dotColor.equals(color);
+        }
+
+        /**
+         * @return      true if a shape with these bounds might overlap a shape in this batch
+         */
+        private boolean overlaps(double x0, double y0, double x1, double y1) {
+            if(x1 <= minX || x0 >= maxX || y1 <= minY || y0 >= maxY) return false;
+            if(count > MAX_OVERLAP_CHECKS) return true;
+            for(int i = 0; i < count * 4; i += 4) {
+                if(x1 > bounds[i] && x0 < bounds[i + 2] && y1 > bounds[i + 1] && y0 < bounds[i + 3]) return true;
+            }
+            return false;
+        }
+
+        private void clear() {
+            count = 0;
+            fill = null;
+            border = null;
+            dotColor = null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.Collection;
+
+/**
+ * Gets told whenever a shape is added to or taken out of the sketch. Caches
+ * and views listen to this instead of the app calling each of them by hand.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public interface ShapeListener
+{
+    /**
+     * called after a shape was added on top of the others
+     *
+     * @param s     the new shape
+     */
+    public abstract void shapeAdded(Shape s);
+
+    /**
+     * called after a shape was taken out
+     *
+     * @param s     the shape that's gone
+     */
+    public abstract void shapeRemoved(Shape s);
+
+    /**
+     * called after shapes already in the sketch changed in place, e.g. got moved.
+     * Everything they painted before or after the change is inside the box.
+     *
+     * @param x     left edge of the box in world coordinates
+     * @param y     top edge of the box in world coordinates
+     * @param w     width of the box
+     * @param h     height of the box
+     */
+    public abstract void shapesChanged(double x, double y, double w, double h);
+
+    /**
+     * called after shapes already in the sketch were all moved by the same amount.
+     * Unless it's overridden it tells shapesChanged about where they were and
+     * where they are now.
+     *
+     * @param moved     the shapes, already at their new spot
+     * @param x         left edge of the box around them before the move, in world coordinates
+     * @param y         top edge of that box
+     * @param w         width of that box
+     * @param h         height of that box
+     * @param dx        how far they moved right
+     * @param dy        how far they moved down
+     */
+    public default void shapesMoved(Collection<Shape> moved, double x, double y, double w, double h, double dx, double dy) {
+        shapesChanged(x, y, w, h);
+        shapesChanged(x + dx, y + dy, w, h);
+    }
+}
@@ -0,0 +1,596 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Holds every shape in the sketch as rows of plain arrays, one array per
+ * field, instead of a Shape, two Vectors and two Color references each.
+ * A shape is about 50 bytes in a handful of arrays rather than over 100
+ * spread around the heap, and going through the shapes to cull them only
+ * reads a few arrays from front to back.
+ *
+ * Colors are kept once each in a palette and shapes just hold a number
+ * into it, a sketch only ever uses a handful of colors.
+ *
+ * Everything a loop over the shapes needs, like the bounds, contains(),
+ * draw() and appendPath(), can be asked of a row without making an object.
+ * The static versions take any List of Shapes and only go through get()
+ * when it isn't a ShapeStore, so drawing code works on both.
+ *
+ * It's still a List of Shapes for everything that wants one, but get()
+ * makes a new Rectangle or Ellipse that doesn't point into the arrays, so
+ * keep it out of loops. It has the stored shape's id, so it equals the
+ * stored shape, and set() writes a changed copy back.
+ *
+ * Shapes are only ever added on top and undo takes off the newest one, so a
+ * row keeps holding the same shape while it's stored and the ids go up row
+ * by row.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class ShapeStore extends AbstractList<Shape>
+{
+    public static final byte RECTANGLE = 0;
+    public static final byte ELLIPSE = 1;
+    private static final int START_CAPACITY = 64;
+
+    private int size = 0;
+    private byte[] type = new byte[START_CAPACITY];
+    private double[] x = new double[START_CAPACITY];
+    private double[] y = new double[START_CAPACITY];
+    private double[] w = new double[START_CAPACITY];
+    private double[] h = new double[START_CAPACITY];
+    private int[] fill = new int[START_CAPACITY];
+    private int[] border = new int[START_CAPACITY];
+    private int[] lineWidth = new int[START_CAPACITY];
+    private int[] id = new int[START_CAPACITY];
+
+    //every color used, shapes keep their place in here
+    private final ArrayList<Color> palette = new ArrayList<Color>();
+    private final HashMap<Color, Integer> paletteIndex = new HashMap<Color, Integer>();
+
+    //stats
+    private long copiesMade;
+
+    /**
+     * Constructor for ShapeStore, it starts out empty
+     */
+    public ShapeStore() {
+    }
+
+    /**
+     * @return      how many shapes are stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * copies a stored shape out of the arrays, changing the copy doesn't change the store
+     *
+     * @param i     which shape, 0 is the bottom one
+     * @return      a Rectangle or Ellipse with the stored shape's id
+     */
+    public Shape get(int i) {
+        check(i);
+        copiesMade++;
+        Vector siz = new Vector(w[i], h[i]);
+        Vector pos = new Vector(x[i], y[i]);
+        if(type[i] == ELLIPSE) return new Ellipse(siz, palette.get(fill[i]), palette.get(border[i]), pos, lineWidth[i], id[i]);
+        return new Rectangle(siz, palette.get(fill[i]), palette.get(border[i]), pos, lineWidth[i], id[i]);
+    }
+
+    /**
+     * writes a changed copy of a stored shape back, like one that got moved
+     *
+     * @param i     which shape
+     * @param s     the shape, it has to have the stored shape's id and kind
+     * @return      a copy of what was stored before
+     * @throws IllegalArgumentException if s is some other shape
+     */
+    public Shape set(int i, Shape s) {
+        Shape old = get(i);
+        if(s.getId() != id[i] || s.getClass() != old.getClass()) throw new IllegalArgumentException("Shape " + s.getId() + " isn't the one stored at " + i + ".");
+        x[i] = s.pos.getX();
+        y[i] = s.pos.getY();
+        w[i] = s.siz.getX();
+        h[i] = s.siz.getY();
+        fill[i] = colorIndex(s.getFillColor());
+        border[i] = colorIndex(s.getBorderColor());
+        lineWidth[i] = s.getLineWidth();
+        return old;
+    }
+
+    /**
+     * copies a shape in on top. The shape itself isn't kept, get the stored one back with get().
+     *
+     * @param index     where to put it, has to be size()
+     * @param s         a Rectangle or Ellipse
+     * @throws UnsupportedOperationException if index isn't the top
+     * @throws IllegalArgumentException if it's some other kind of shape
+     */
+    public void add(int index, Shape s) {
+        if(index != size) throw new UnsupportedOperationException("Shapes can only be added on top.");
+        byte t;
+        if(s instanceof Rectangle) t = RECTANGLE;
+        else if(s instanceof Ellipse) t = ELLIPSE;
+        else throw new IllegalArgumentException("A ShapeStore only holds rectangles and ellipses.");
+        if(size == type.length) grow();
+        type[size] = t;
+        x[size] = s.pos.getX();
+        y[size] = s.pos.getY();
+        w[size] = s.siz.getX();
+        h[size] = s.siz.getY();
+        fill[size] = colorIndex(s.getFillColor());
+        border[size] = colorIndex(s.getBorderColor());
+        lineWidth[size] = s.getLineWidth();
+        id[size] = s.getId();
+        size++;
+        modCount++;
+    }
+
+    /**
+     * takes a shape out, everything above it moves down a row
+     *
+     * @param i     which shape, undo always takes the top one
+     * @return      a copy of the shape that doesn't point into the store
+     */
+    public Shape remove(int i) {
+        Shape s = get(i);
+        int n = size - i - 1;
+        if(n > 0) {
+            System.arraycopy(type, i + 1, type, i, n);
+            System.arraycopy(x, i + 1, x, i, n);
+            System.arraycopy(y, i + 1, y, i, n);
+            System.arraycopy(w, i + 1, w, i, n);
+            System.arraycopy(h, i + 1, h, i, n);
+            System.arraycopy(fill, i + 1, fill, i, n);
+            System.arraycopy(border, i + 1, border, i, n);
+            System.arraycopy(lineWidth, i + 1, lineWidth, i, n);
+            System.arraycopy(id, i + 1, id, i, n);
+        }
+        size--;
+        modCount++;
+        return s;
+    }
+
+    /**
+     * takes every shape out, the arrays stay their size
+     */
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * same check as Shape.intersects, straight from the arrays
+     *
+     * @param i     which shape
+     * @param rx    left edge of the rectangle
+     * @param ry    top edge of the rectangle
+     * @param rw    width of the rectangle
+     * @param rh    height of the rectangle
+     * @return      true if the shape's painted area overlaps the rectangle
+     */
+    public boolean intersects(int i, double rx, double ry, double rw, double rh) {
+        double pad = lineWidth[i] / 2.0 + 1;
+        return x[i] + w[i] + pad > rx && x[i] - pad < rx + rw && y[i] + h[i] + pad > ry && y[i] - pad < ry + rh;
+    }
+
+    /**
+     * culls one shape of any list of shapes, without making a copy if it's a ShapeStore
+     *
+     * @param shapes    the list
+     * @param i         which shape
+     * @param rx        left edge of the rectangle
+     * @param ry        top edge of the rectangle
+     * @param rw        width of the rectangle
+     * @param rh        height of the rectangle
+     * @return          true if the shape's painted area overlaps the rectangle
+     */
+    public static boolean intersects(List<Shape> shapes, int i, double rx, double ry, double rw, double rh) {
+        if(shapes instanceof ShapeStore) return ((ShapeStore)shapes).intersects(i, rx, ry, rw, rh);
+        return shapes.get(i).intersects(rx, ry, rw, rh);
+    }
+
+    /**
+     * @param i     which shape
+     * @return      left edge of the painted area, stroke included
+     */
+    public double getMinX(int i) {
+        return x[i] - padding(i);
+    }
+
+    /**
+     * @param i     which shape
+     * @return      top edge of the painted area, stroke included
+     */
+    public double getMinY(int i) {
+        return y[i] - padding(i);
+    }
+
+    /**
+     * @param i     which shape
+     * @return      right edge of the painted area, stroke included
+     */
+    public double getMaxX(int i) {
+        return x[i] + w[i] + padding(i);
+    }
+
+    /**
+     * @param i     which shape
+     * @return      bottom edge of the painted area, stroke included
+     */
+    public double getMaxY(int i) {
+        return y[i] + h[i] + padding(i);
+    }
+
+    /**
+     * same as Shape.getPadding
+     */
+    private double padding(int i) {
+        return lineWidth[i] / 2.0 + 1;
+    }
+
+    /**
+     * @param i     which shape
+     * @return      left edge of the shape, like pos.getX()
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * @param i     which shape
+     * @return      top edge of the shape, like pos.getY()
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @param i     which shape
+     * @return      width of the shape, like siz.getX()
+     */
+    public double getWidth(int i) {
+        return w[i];
+    }
+
+    /**
+     * @param i     which shape
+     * @return      height of the shape, like siz.getY()
+     */
+    public double getHeight(int i) {
+        return h[i];
+    }
+
+    /**
+     * @param i     which shape
+     * @return      the fill color
+     */
+    public Color getFillColor(int i) {
+        return palette.get(fill[i]);
+    }
+
+    /**
+     * @param i     which shape
+     * @return      the border color
+     */
+    public Color getBorderColor(int i) {
+        return palette.get(border[i]);
+    }
+
+    /**
+     * @param i     which shape
+     * @return      the stroke thickness
+     */
+    public int getLineWidth(int i) {
+        return lineWidth[i];
+    }
+
+    /**
+     * same check as Shape.contains, straight from the arrays
+     *
+     * @param i     which shape
+     * @param px    x of the point in world coordinates
+     * @param py    y of the point in world coordinates
+     * @return      true if the point is on the fill or the border
+     */
+    public boolean contains(int i, double px, double py) {
+        if(type[i] == ELLIPSE) return Ellipse.contains(px, py, x[i], y[i], w[i], h[i], lineWidth[i]);
+        return Shape.boxContains(px, py, x[i], y[i], w[i], h[i], lineWidth[i]);
+    }
+
+    /**
+     * draws a stored shape the same as its Shape would
+     *
+     * @param i     which shape
+     * @param gc    GraphicsContext to draw onto
+     */
+    public void draw(int i, GraphicsContext gc) {
+        if(type[i] == ELLIPSE) Ellipse.draw(gc, x[i], y[i], w[i], h[i], palette.get(fill[i]), palette.get(border[i]), lineWidth[i]);
+        else Rectangle.draw(gc, x[i], y[i], w[i], h[i], palette.get(fill[i]), palette.get(border[i]), lineWidth[i]);
+    }
+
+    /**
+     * draws a stored shape into a Raster, works on any thread as long as the store isn't changing
+     *
+     * @param i     which shape
+     * @param r     the Raster to draw into
+     */
+    public void draw(int i, Raster r) {
+        if(type[i] == ELLIPSE) Ellipse.draw(r, x[i], y[i], w[i], h[i], palette.get(fill[i]), palette.get(border[i]), lineWidth[i]);
+        else Rectangle.draw(r, x[i], y[i], w[i], h[i], palette.get(fill[i]), palette.get(border[i]), lineWidth[i]);
+    }
+
+    /**
+     * adds the outline of a stored shape to the current path, same as Shape.appendPath
+     *
+     * @param i     which shape
+     * @param gc    GraphicsContext the path is being built on
+     */
+    public void appendPath(int i, GraphicsContext gc) {
+        if(type[i] == ELLIPSE) Ellipse.appendPath(gc, x[i], y[i], w[i], h[i]);
+        else gc.rect(x[i], y[i], w[i], h[i]);
+    }
+
+    /**
+     * same as Shape.getSolidArea, straight from the arrays
+     *
+     * @param i     which shape
+     * @param out   gets the box as {minX, minY, maxX, maxY}
+     * @return      false if the shape doesn't fully hide anything, out is left alone then
+     */
+    public boolean getSolidArea(int i, double[] out) {
+        if(type[i] == ELLIPSE) return Ellipse.getSolidArea(x[i], y[i], w[i], h[i], palette.get(fill[i]), out);
+        return Rectangle.getSolidArea(x[i], y[i], w[i], h[i], palette.get(fill[i]), palette.get(border[i]), lineWidth[i], out);
+    }
+
+    /**
+     * @return      left edge of the painted area of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getMinX(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getMinX(i) : shapes.get(i).getMinX();
+    }
+
+    /**
+     * @return      top edge of the painted area of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getMinY(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getMinY(i) : shapes.get(i).getMinY();
+    }
+
+    /**
+     * @return      right edge of the painted area of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getMaxX(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getMaxX(i) : shapes.get(i).getMaxX();
+    }
+
+    /**
+     * @return      bottom edge of the painted area of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getMaxY(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getMaxY(i) : shapes.get(i).getMaxY();
+    }
+
+    /**
+     * @return      pos.getX() of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getX(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getX(i) : shapes.get(i).pos.getX();
+    }
+
+    /**
+     * @return      pos.getY() of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getY(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getY(i) : shapes.get(i).pos.getY();
+    }
+
+    /**
+     * @return      siz.getX() of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getWidth(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getWidth(i) : shapes.get(i).siz.getX();
+    }
+
+    /**
+     * @return      siz.getY() of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static double getHeight(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getHeight(i) : shapes.get(i).siz.getY();
+    }
+
+    /**
+     * @return      the fill color of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static Color getFillColor(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getFillColor(i) : shapes.get(i).getFillColor();
+    }
+
+    /**
+     * @return      the border color of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static Color getBorderColor(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getBorderColor(i) : shapes.get(i).getBorderColor();
+    }
+
+    /**
+     * @return      the stroke thickness of any list's shape, without a copy if it's a ShapeStore
+     */
+    public static int getLineWidth(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getLineWidth(i) : shapes.get(i).getLineWidth();
+    }
+
+    /**
+     * @return      true if any list's shape is an Ellipse, without a copy if it's a ShapeStore
+     */
+    public static boolean isEllipse(List<Shape> shapes, int i) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).type[i] == ELLIPSE : shapes.get(i) instanceof Ellipse;
+    }
+
+    /**
+     * @return      true if a point is on any list's shape, without a copy if it's a ShapeStore
+     */
+    public static boolean contains(List<Shape> shapes, int i, double px, double py) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).contains(i, px, py) : shapes.get(i).contains(px, py);
+    }
+
+    /**
+     * draws any list's shape, without a copy if it's a ShapeStore
+     */
+    public static void draw(List<Shape> shapes, int i, GraphicsContext gc) {
+        if(shapes instanceof ShapeStore) ((ShapeStore)shapes).draw(i, gc);
+        else shapes.get(i).draw(gc);
+    }
+
+    /**
+     * draws any list's shape into a Raster, without a copy if it's a ShapeStore
+     */
+    public static void draw(List<Shape> shapes, int i, Raster r) {
+        if(shapes instanceof ShapeStore) ((ShapeStore)shapes).draw(i, r);
+        else shapes.get(i).draw(r);
+    }
+
+    /**
+     * adds any list's shape to the current path, without a copy if it's a ShapeStore
+     */
+    public static void appendPath(List<Shape> shapes, int i, GraphicsContext gc) {
+        if(shapes instanceof ShapeStore) ((ShapeStore)shapes).appendPath(i, gc);
+        else shapes.get(i).appendPath(gc);
+    }
+
+    /**
+     * fills any list's shape with the gc's current fill, without a copy if it's a ShapeStore.
+     * Uses fillRect and fillOval, JavaFX draws those a lot quicker than the same outline as a path.
+     */
+    public static void fill(List<Shape> shapes, int i, GraphicsContext gc) {
+        double x = getX(shapes, i);
+        double y = getY(shapes, i);
+        if(isEllipse(shapes, i)) gc.fillOval(x, y, getWidth(shapes, i), getHeight(shapes, i));
+        else gc.fillRect(x, y, getWidth(shapes, i), getHeight(shapes, i));
+    }
+
+    /**
+     * outlines any list's shape with the gc's current stroke and line width, without a copy if it's a ShapeStore
+     */
+    public static void stroke(List<Shape> shapes, int i, GraphicsContext gc) {
+        double x = getX(shapes, i);
+        double y = getY(shapes, i);
+        if(isEllipse(shapes, i)) gc.strokeOval(x, y, getWidth(shapes, i), getHeight(shapes, i));
+        else gc.strokeRect(x, y, getWidth(shapes, i), getHeight(shapes, i));
+    }
+
+    /**
+     * @return      Shape.getSolidArea for any list's shape, without a copy if it's a ShapeStore
+     */
+    public static boolean getSolidArea(List<Shape> shapes, int i, double[] out) {
+        return shapes instanceof ShapeStore ? ((ShapeStore)shapes).getSolidArea(i, out) : shapes.get(i).getSolidArea(out);
+    }
+
+    /**
+     * finds a shape by its id. Ids only go up as shapes are added on top, so the rows are
+     * sorted by id and this is a binary search instead of looking at every row.
+     *
+     * @param o     the shape to look for
+     * @return      which row it's in, -1 if it isn't stored
+     */
+    public int indexOf(Object o) {
+        if(!(o instanceof Shape)) return -1;
+        int i = Arrays.binarySearch(id, 0, size, ((Shape)o).getId());
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * @param i     which shape
+     * @return      the stored shape's id
+     */
+    public int getId(int i) {
+        check(i);
+        return id[i];
+    }
+
+    /**
+     * @param i     which shape
+     * @return      RECTANGLE or ELLIPSE
+     */
+    public byte getType(int i) {
+        check(i);
+        return type[i];
+    }
+
+    /**
+     * @return      where a color is in the palette, adding it if it's new
+     */
+    private int colorIndex(Color c) {
+        Integer k = paletteIndex.get(c);
+        if(k == null) {
+            k = palette.size();
+            palette.add(c);
+            paletteIndex.put(c, k);
+        }
+        return k;
+    }
+
+    /**
+     * doubles the room in every array
+     */
+    private void grow() {
+        int n = type.length * 2;
+        type = Arrays.copyOf(type, n);
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        w = Arrays.copyOf(w, n);
+        h = Arrays.copyOf(h, n);
+        fill = Arrays.copyOf(fill, n);
+        border = Arrays.copyOf(border, n);
+        lineWidth = Arrays.copyOf(lineWidth, n);
+        id = Arrays.copyOf(id, n);
+    }
+
+    private void check(int i) {
+        if(i < 0 || i >= size) throw new IndexOutOfBoundsException("Shape " + i + " of " + size);
+    }
+
+    /**
+     * @return      how many bytes the arrays take, room for more shapes included
+     */
+    public long getBytes() {
+        //type, 4 doubles and 4 ints a row
+        return (long)type.length * (1 + 4 * 8 + 4 * 4);
+    }
+
+    /**
+     * @return      how many different colors are in the palette
+     */
+    public int getPaletteSize() {
+        return palette.size();
+    }
+
+    /**
+     * @return      how many copies get() has made, loops shouldn't be making any
+     */
+    public long getCopiesMade() {
+        return copiesMade;
+    }
+
+    /**
+     * sets the stats back to 0
+     */
+    public void resetStats() {
+        copiesMade = 0;
+    }
+
+    /**
+     * @return      stats about the store
+     */
+    public String toString() {
+        return "ShapeStore: shapes = " + size + "  bytes = " + getBytes() + "  colors = " + palette.size() + "  copies made = " + copiesMade;
+    }
+}
@@ -0,0 +1,429 @@
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One view of the sketch: its own canvas, zoom and pan, drawn from the tile
+ * cache that every view shares. Views only keep track of which of their
+ * tiles still need copying onto their canvas; the pictures themselves live
+ * in the TileCache, so two views at the same zoom never draw a tile twice,
+ * and a change to the shapes only redraws the tiles it touches once no
+ * matter how many views show them.
+ *
+ * While a selection is being dragged the view is "lifted": the scene without
+ * the selection and the selection on its own are drawn once into pictures,
+ * and every frame of the drag is just those two pictures copied onto the
+ * canvas, however many shapes are selected.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class SketchView implements ShapeListener
+{
+    private final Canvas canvas;
+    private final Viewport viewport;
+    private final TileCache tiles;
+    private final List<Shape> shapes;
+    //what the tiles get drawn from, the same shapes but maybe with rectangles merged
+    private List<Shape> drawList;
+    private final DirtyRegion damage = new DirtyRegion();
+    private int firstUndrawn = 0;
+    private boolean viewDirty = true;
+    private boolean progressive = true;
+    private boolean incremental = true;
+
+    //tiles waiting to be copied onto the canvas, the grid starts at tile baseCol, baseRow
+    private boolean[] pending = new boolean[0];
+    private int cols;
+    private int rows;
+    private long baseCol;
+    private long baseRow;
+    private int nextPending = 0;
+
+    //the selection being dragged, null if the view isn't lifted
+    private Set<Shape> lifted = null;
+    private Canvas liftScratch;
+    private final SnapshotParameters liftParams = new SnapshotParameters();
+    private WritableImage liftScene;
+    private WritableImage liftSelection;
+    //where the selection picture was on screen when it was drawn, and how far it's been dragged in world units
+    private double liftX;
+    private double liftY;
+    private double liftW;
+    private double liftH;
+    private double liftDX;
+    private double liftDY;
+
+    /**
+     * Constructor for SketchView
+     *
+     * @param width     width of the view on screen
+     * @param height    height of the view on screen
+     * @param tiles     the tile cache shared by every view
+     * @param shapes    all shapes, bottom to top
+     */
+    public SketchView(double width, double height, TileCache tiles, List<Shape> shapes) {
+        this.canvas = new Canvas(width, height);
+        this.viewport = new Viewport(width, height);
+        this.tiles = tiles;
+        this.shapes = shapes;
+        this.drawList = shapes;
+        firstUndrawn = shapes.size();
+    }
+
+    /**
+     * new shapes are on top, so they get drawn straight onto the canvas on the next repaint
+     *
+     * @param s     the shape that was added
+     */
+    public void shapeAdded(Shape s) {
+    }
+
+    /**
+     * repaints the area a removed shape covered on the next repaint
+     *
+     * @param s     the shape that was removed
+     */
+    public void shapeRemoved(Shape s) {
+        damage.add(s, viewport);
+        firstUndrawn = Math.min(firstUndrawn, shapes.size());
+    }
+
+    /**
+     * repaints the area shapes that changed in place covered on the next repaint
+     *
+     * @param x     left edge of the changed area in world coordinates
+     * @param y     top edge of the changed area in world coordinates
+     * @param w     width of the changed area
+     * @param h     height of the changed area
+     */
+    public void shapesChanged(double x, double y, double w, double h) {
+        double sx = viewport.toScreenX(x);
+        double sy = viewport.toScreenY(y);
+        damage.add(sx - 1, sy - 1, viewport.toScreenX(x + w) - sx + 2, viewport.toScreenY(y + h) - sy + 2);
+    }
+
+    /**
+     * moves and resizes the view on screen, the world stays put under its top left corner
+     *
+     * @param x         left edge on screen
+     * @param y         top edge on screen
+     * @param width     width on screen
+     * @param height    height on screen
+     */
+    public void setBounds(double x, double y, double width, double height) {
+        canvas.relocate(x, y);
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        viewport.setSize(width, height);
+        viewChanged();
+    }
+
+    /**
+     * @param sx    x on screen
+     * @param sy    y on screen
+     * @return      true if the point is over this view
+     */
+    public boolean contains(double sx, double sy) {
+        return sx >= getX() && sy >= getY() && sx < getX() + viewport.getWidth() && sy < getY() + viewport.getHeight();
+    }
+
+    /**
+     * repaints everything on the next repaint, after a zoom or pan
+     */
+    public void viewChanged() {
+        viewDirty = true;
+    }
+
+    /**
+     * brings the canvas up to date with everything that changed since the last repaint
+     */
+    public void repaint() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        if(lifted != null) {
+            //the view moved under the drag, so the pictures are drawn again for it
+            if(viewDirty) capture();
+            viewDirty = false;
+            drawLifted(gc);
+            return;
+        }
+        if(viewDirty) {
+            viewDirty = false;
+            //tiles stay good across a pan, and at another zoom they're other tiles, so nothing is invalidated
+            drawEverything();
+        } else if(!incremental) {
+            drawEverything();
+        } else if(!damage.isEmpty() || drawList != shapes) {
+            //an undo touched the canvas too, the tiles it redraws already have the new shapes.
+            //A new rectangle can also join a merged run that's already on screen and change its
+            //outline, so with a separate draw list the tiles are the only way to get that right.
+            for(int i = firstUndrawn; i < shapes.size(); i++) damage.add(shapes, i, viewport);
+            if(!damage.isEmpty()) requestDraw(damage.getX(), damage.getY(), damage.getWidth(), damage.getHeight());
+            if(!progressive) drawPending(Long.MAX_VALUE);
+        } else {
+            //new shapes are on top of everything, so they can just be drawn over what's there,
+            //at the same quality the tiles are being drawn at
+            gc.save();
+            viewport.apply(gc);
+            for(int i = firstUndrawn; i < shapes.size(); i++) {
+                if(viewport.isVisible(shapes, i)) tiles.drawShape(gc, shapes, i, viewport.getScale());
+            }
+            gc.restore();
+        }
+        damage.clear();
+        firstUndrawn = shapes.size();
+    }
+
+    /**
+     * queues every tile on screen, drawn right away unless progressive
+     */
+    public void drawEverything() {
+        long c = Math.floorDiv(viewport.getOriginX(), tiles.getTileSize());
+        long r = Math.floorDiv(viewport.getOriginY(), tiles.getTileSize());
+        int w = (int)Math.ceil(viewport.getWidth() / tiles.getTileSize()) + 1;
+        int h = (int)Math.ceil(viewport.getHeight() / tiles.getTileSize()) + 1;
+        if(c != baseCol || r != baseRow || w != cols || h != rows) {
+            baseCol = c;
+            baseRow = r;
+            cols = w;
+            rows = h;
+            if(pending.length != cols * rows) pending = new boolean[cols * rows];
+        }
+        requestDraw(0, 0, viewport.getWidth(), viewport.getHeight());
+        if(!progressive) drawPending(Long.MAX_VALUE);
+    }
+
+    /**
+     * marks the tiles overlapping a rectangle in the view as needing to be copied onto the canvas
+     *
+     * @param x         left edge
+     * @param y         top edge
+     * @param w         width
+     * @param h         height
+     */
+    public void requestDraw(double x, double y, double w, double h) {
+        int t = tiles.getTileSize();
+        int c0 = (int)Math.max(0, Math.floorDiv((long)Math.floor(x) + viewport.getOriginX(), t) - baseCol);
+        int r0 = (int)Math.max(0, Math.floorDiv((long)Math.floor(y) + viewport.getOriginY(), t) - baseRow);
+        int c1 = (int)Math.min(cols - 1, Math.floorDiv((long)Math.floor(x + w) + viewport.getOriginX(), t) - baseCol);
+        int r1 = (int)Math.min(rows - 1, Math.floorDiv((long)Math.floor(y + h) + viewport.getOriginY(), t) - baseRow);
+        for(int r = r0; r <= r1; r++) {
+            for(int c = c0; c <= c1; c++) {
+                pending[r * cols + c] = true;
+            }
+        }
+        nextPending = 0;
+    }
+
+    /**
+     * @return      true if there are tiles waiting to be copied onto the canvas
+     */
+    public boolean hasPending() {
+        if(lifted != null) return false;
+        for(int i = nextPending; i < pending.length; i++) {
+            if(pending[i]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * copies pending tiles onto the canvas, redrawing any that are out of date, until
+     * they're all done or the deadline passes. Call it again to carry on.
+     *
+     * @param deadline  System.nanoTime() to stop at
+     * @return          true if every pending tile got drawn
+     */
+    public boolean drawPending(long deadline) {
+        if(lifted != null) return true;
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        int t = tiles.getTileSize();
+        long ox = viewport.getOriginX();
+        long oy = viewport.getOriginY();
+        for(; nextPending < pending.length; nextPending++) {
+            int i = nextPending;
+            if(!pending[i]) continue;
+            long col = baseCol + i % cols;
+            long row = baseRow + i / cols;
+            if(!tiles.drawTile(gc, drawList, viewport.getScale(), col, row, col * t - ox, row * t - oy, deadline)) return false;
+            pending[i] = false;
+            if(System.nanoTime() > deadline) {
+                nextPending++;
+                return !hasPending();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * starts dragging a selection. The scene without it and the selection by itself get
+     * drawn into pictures once, and until drop() every repaint just copies those two.
+     *
+     * @param selection     the shapes being dragged
+     */
+    public void lift(Set<Shape> selection) {
+        lifted = selection;
+        liftDX = 0;
+        liftDY = 0;
+        capture();
+    }
+
+    /**
+     * moves the lifted selection, it gets copied to the new spot on the next repaint
+     *
+     * @param dx    how far it's been dragged right since lift(), in world units
+     * @param dy    how far it's been dragged down since lift(), in world units
+     */
+    public void setLiftOffset(double dx, double dy) {
+        liftDX = dx;
+        liftDY = dy;
+    }
+
+    /**
+     * stops dragging. The shapes should have been moved by now, everything gets redrawn
+     * from the tiles on the next repaint, which only draws the ones the move touched.
+     */
+    public void drop() {
+        lifted = null;
+        viewChanged();
+    }
+
+    /**
+     * @return      true if a selection is being dragged in this view
+     */
+    public boolean isLifted() {
+        return lifted != null;
+    }
+
+    /**
+     * draws the scene without the selection and the selection by itself into pictures
+     */
+    private void capture() {
+        double ps = tiles.getPixelScale();
+        double w = viewport.getWidth();
+        double h = viewport.getHeight();
+        if(liftScratch == null) liftScratch = new Canvas();
+        GraphicsContext gc = liftScratch.getGraphicsContext2D();
+
+        liftScratch.setWidth(Math.ceil(w * ps));
+        liftScratch.setHeight(Math.ceil(h * ps));
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, liftScratch.getWidth(), liftScratch.getHeight());
+        gc.save();
+        gc.scale(ps, ps);
+        viewport.apply(gc);
+        double vx = viewport.toWorldX(0);
+        double vy = viewport.toWorldY(0);
+        for(int i = 0; i < shapes.size(); i++) {
+            if(!ShapeStore.intersects(shapes, i, vx, vy, w / viewport.getScale(), h / viewport.getScale())) continue;
+            Shape s = shapes.get(i);
+            if(!lifted.contains(s)) s.draw(gc);
+        }
+        gc.restore();
+        liftParams.setFill(Color.WHITE);
+        liftScene = liftScratch.snapshot(liftParams, liftScene);
+
+        //the selection's box on screen, kept to a view's size past each edge so the picture stays a sane size
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        for(Shape s : lifted) {
+            x0 = Math.min(x0, s.getMinX());
+            y0 = Math.min(y0, s.getMinY());
+            x1 = Math.max(x1, s.getMaxX());
+            y1 = Math.max(y1, s.getMaxY());
+        }
+        liftX = Math.floor(Math.max(-w, viewport.toScreenX(x0)));
+        liftY = Math.floor(Math.max(-h, viewport.toScreenY(y0)));
+        liftW = Math.max(1, Math.ceil(Math.min(2 * w, viewport.toScreenX(x1))) - liftX);
+        liftH = Math.max(1, Math.ceil(Math.min(2 * h, viewport.toScreenY(y1))) - liftY);
+        double wx = viewport.toWorldX(liftX);
+        double wy = viewport.toWorldY(liftY);
+        double ww = liftW / viewport.getScale();
+        double wh = liftH / viewport.getScale();
+
+        liftScratch.setWidth(Math.ceil(liftW * ps));
+        liftScratch.setHeight(Math.ceil(liftH * ps));
+        gc.clearRect(0, 0, liftScratch.getWidth(), liftScratch.getHeight());
+        gc.save();
+        gc.scale(ps, ps);
+        gc.translate(-liftX, -liftY);
+        viewport.apply(gc);
+        //in sketch order, so the selected shapes keep their stacking
+        for(int i = 0; i < shapes.size(); i++) {
+            if(!ShapeStore.intersects(shapes, i, wx, wy, ww, wh)) continue;
+            Shape s = shapes.get(i);
+            if(lifted.contains(s)) s.draw(gc);
+        }
+        gc.restore();
+        liftParams.setFill(Color.TRANSPARENT);
+        liftSelection = liftScratch.snapshot(liftParams, liftSelection);
+    }
+
+    /**
+     * one frame of a drag, two copies
+     */
+    private void drawLifted(GraphicsContext gc) {
+        double ps = tiles.getPixelScale();
+        double w = viewport.getWidth();
+        double h = viewport.getHeight();
+        gc.drawImage(liftScene, 0, 0, Math.ceil(w * ps), Math.ceil(h * ps), 0, 0, Math.ceil(w * ps) / ps, Math.ceil(h * ps) / ps);
+        double sx = liftX + liftDX * viewport.getScale();
+        double sy = liftY + liftDY * viewport.getScale();
+        gc.drawImage(liftSelection, 0, 0, Math.ceil(liftW * ps), Math.ceil(liftH * ps), sx, sy, Math.ceil(liftW * ps) / ps, Math.ceil(liftH * ps) / ps);
+    }
+
+    /**
+     * sets the list tiles get drawn from, it has to look the same as the shapes when drawn.
+     * Redraws everything on the next repaint.
+     *
+     * @param drawList  shapes to draw tiles from, bottom to top
+     */
+    public void setDrawList(List<Shape> drawList) {
+        this.drawList = drawList;
+        viewChanged();
+    }
+
+    /**
+     * @param progressive   true to leave tiles for the render loop, false to finish them right away
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /**
+     * @param incremental   true to only repaint damaged areas, false to redraw everything
+     */
+    public void setIncrementalRepaint(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return      left edge of the view on screen
+     */
+    public double getX() {
+        return canvas.getLayoutX();
+    }
+
+    /**
+     * @return      top edge of the view on screen
+     */
+    public double getY() {
+        return canvas.getLayoutY();
+    }
+
+    /**
+     * @return      the view's canvas
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * @return      the view's zoom and pan
+     */
+    public Viewport getViewport() {
+        return viewport;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * The inner loops for filling and copying runs of premultiplied ARGB pixels
+ * in an int array. Everything the Raster does to more than a few pixels at a
+ * time ends up in here.
+ *
+ * The loops are kept plain on purpose (one pass, no branches inside, int math
+ * only) so HotSpot can turn them into SIMD instructions by itself. Blending
+ * works on two color channels at once, red and blue in one int and alpha and
+ * green in another, which halves the multiplies and gives the same answer as
+ * doing each channel separately.
+ *
+ * When the JVM was started with --add-modules jdk.incubator.vector, fill and
+ * blendFill hand off to VectorSpanKernels instead, which does the same math
+ * a whole vector of pixels at a time. HotSpot only vectorizes the plain loops
+ * once a span is long enough to pay for the setup, the Vector API is a lot
+ * quicker on the short spans shapes are mostly made of. Without the module
+ * VectorSpanKernels is never loaded and the plain loops are used.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class SpanKernels
+{
+    //checked once, the branches on it fold away once the JIT has the class
+    private static final boolean VECTOR = vectorAvailable();
+
+    private SpanKernels() {
+    }
+
+    /**
+     * @return      true if the Vector API module is there and VectorSpanKernels loads
+     */
+    private static boolean vectorAvailable() {
+        if(!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return false;
+        try {
+            return VectorSpanKernels.lanes() > 1;
+        } catch(LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return      true if fill and blendFill are using the Vector API
+     */
+    public static boolean isVectorized() {
+        return VECTOR;
+    }
+
+    /**
+     * sets pixels from up to to to one color
+     *
+     * @param pixels    the pixels to fill
+     * @param from      first pixel
+     * @param to        pixel after the last one
+     * @param argb      premultiplied color
+     */
+    public static void fill(int[] pixels, int from, int to, int argb) {
+        if(VECTOR) {
+            VectorSpanKernels.fill(pixels, from, to, argb);
+            return;
+        }
+        for(int i = from; i < to; i++) {
+            pixels[i] = argb;
+        }
+    }
+
+    /**
+     * draws one color over pixels from up to to
+     *
+     * @param pixels    the pixels to draw over
+     * @param from      first pixel
+     * @param to        pixel after the last one
+     * @param argb      premultiplied color, can be see-through
+     */
+    public static void blendFill(int[] pixels, int from, int to, int argb) {
+        int alpha = argb >>> 24;
+        if(alpha == 255) {
+            fill(pixels, from, to, argb);
+            return;
+        }
+        if(alpha == 0) return;
+        if(VECTOR) {
+            VectorSpanKernels.blendFill(pixels, from, to, argb);
+            return;
+        }
+        int inv = 255 - alpha;
+        for(int i = from; i < to; i++) {
+            int dst = pixels[i];
+            int rb = (dst & 0x00ff00ff) * inv + 0x00800080;
+            int ag = ((dst >>> 8) & 0x00ff00ff) * inv + 0x00800080;
+            rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+            ag = (ag + ((ag >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+            pixels[i] = argb + (ag | rb);
+        }
+    }
+
+    /**
+     * draws one premultiplied color over another
+     *
+     * @param src   the color on top
+     * @param dst   the color underneath
+     * @return      the blended color
+     */
+    public static int blend(int src, int dst) {
+        int inv = 255 - (src >>> 24);
+        int rb = (dst & 0x00ff00ff) * inv + 0x00800080;
+        int ag = ((dst >>> 8) & 0x00ff00ff) * inv + 0x00800080;
+        rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+        ag = (ag + ((ag >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+        return src + (ag | rb);
+    }
+
+    /**
+     * copies a run of pixels, the two runs can be in the same array
+     *
+     * @param src       pixels to copy from
+     * @param srcPos    first pixel to copy
+     * @param dst       pixels to copy to
+     * @param dstPos    where the first pixel goes
+     * @param length    how many pixels
+     */
+    public static void copy(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+        System.arraycopy(src, srcPos, dst, dstPos, length);
+    }
+}
@@ -0,0 +1,251 @@
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keeps ready made pictures of shapes that are slow to draw, so drawing the
+ * same shape again is just copying a picture. Thick anti-aliased ellipse
+ * outlines are the main reason this exists, they cost a lot more than
+ * anything else and documents tend to have lots of identical ones.
+ *
+ * A picture is only good for one size, style and zoom, so those make up the
+ * key. Pictures get copied on whole pixels, and the part of a pixel the shape
+ * starts at (rounded to a quarter) is part of the key too, so a copied
+ * picture lands within an eighth of a pixel of where drawing would have.
+ *
+ * The pictures that haven't been used for the longest get thrown out once
+ * they add up to more than the byte budget.
+ *
+ * Everything in here uses the JavaFX thread.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class SpriteCache
+{
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    //biggest picture worth keeping, anything bigger is drawn normally
+    private static final int MAX_SPRITE_SIZE = 256;
+    //thinnest outline in pixels worth keeping a picture for
+    private static final double MIN_STROKE_PIXELS = 2;
+    private static final int PHASES = 4;
+
+    private final long maxBytes;
+    private long bytes = 0;
+    //access ordered, so iterating starts at the least recently used
+    private final LinkedHashMap<Key, WritableImage> sprites = new LinkedHashMap<Key, WritableImage>(64, 0.75f, true);
+
+    private final Canvas scratch = new Canvas(MAX_SPRITE_SIZE, MAX_SPRITE_SIZE);
+    private final SnapshotParameters params = new SnapshotParameters();
+    //filled in for each lookup so a hit doesn't allocate, only a miss gets its own Key
+    private final Key probe = new Key();
+
+    //stats
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor for SpriteCache
+     *
+     * @param maxBytes  how much memory the pictures can use, 4 bytes a pixel
+     */
+    public SpriteCache(long maxBytes) {
+        if(maxBytes <= 0) throw new IllegalArgumentException("Sprite cache budget must be positive.");
+        this.maxBytes = maxBytes;
+        params.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * @param shapes    the shapes
+     * @param i         index of the shape
+     * @param scale     pixels per world unit
+     * @return          true if the shape is slow enough and small enough to be worth a picture
+     */
+    public boolean isWorthCaching(List<Shape> shapes, int i, double scale) {
+        if(!ShapeStore.isEllipse(shapes, i)) return false;
+        if(ShapeStore.getLineWidth(shapes, i) * scale < MIN_STROKE_PIXELS) return false;
+        return (ShapeStore.getMaxX(shapes, i) - ShapeStore.getMinX(shapes, i)) * scale + 3 <= MAX_SPRITE_SIZE
+            && (ShapeStore.getMaxY(shapes, i) - ShapeStore.getMinY(shapes, i)) * scale + 3 <= MAX_SPRITE_SIZE;
+    }
+
+    /**
+     * draws a shape by copying its picture, making the picture first if there isn't one yet
+     *
+     * @param gc        GraphicsContext to draw onto, its transform gets ignored
+     * @param shapes    the shapes
+     * @param i         index of the shape, should be worth caching
+     * @param scale     pixels per world unit
+     * @param sx        where the shape's left edge (getMinX) is on gc, in pixels
+     * @param sy        where the shape's top edge (getMinY) is on gc, in pixels
+     */
+    public void draw(GraphicsContext gc, List<Shape> shapes, int i, double scale, double sx, double sy) {
+        double fx = Math.floor(sx);
+        double fy = Math.floor(sy);
+        int phaseX = (int)Math.round((sx - fx) * PHASES);
+        int phaseY = (int)Math.round((sy - fy) * PHASES);
+        probe.set(shapes, i, scale, phaseX, phaseY);
+        WritableImage img = sprites.get(probe);
+        if(img != null) {
+            hits++;
+        } else {
+            misses++;
+            //only a miss makes a copy of the shape
+            img = render(shapes.get(i), scale, (double)phaseX / PHASES, (double)phaseY / PHASES);
+            Key key = new Key();
+            key.set(shapes, i, scale, phaseX, phaseY);
+            sprites.put(key, img);
+            bytes += size(img);
+            evict();
+        }
+        gc.save();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        //one pixel of margin on every side for the anti-aliased edge
+        gc.drawImage(img, fx - 1, fy - 1);
+        gc.restore();
+    }
+
+    /**
+     * draws a shape onto a transparent picture, starting phase pixels into the picture plus the margin
+     */
+    private WritableImage render(Shape s, double scale, double phaseX, double phaseY) {
+        int w = (int)Math.ceil((s.getMaxX() - s.getMinX()) * scale + phaseX) + 2;
+        int h = (int)Math.ceil((s.getMaxY() - s.getMinY()) * scale + phaseY) + 2;
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.clearRect(0, 0, w, h);
+        gc.save();
+        gc.translate(1 + phaseX, 1 + phaseY);
+        gc.scale(scale, scale);
+        gc.translate(-s.getMinX(), -s.getMinY());
+        s.draw(gc);
+        gc.restore();
+        params.setViewport(new Rectangle2D(0, 0, w, h));
+        return scratch.snapshot(params, null);
+    }
+
+    /**
+     * throws out the least recently used pictures until the cache fits its budget
+     */
+    private void evict() {
+        Iterator<WritableImage> it = sprites.values().iterator();
+        while(bytes > maxBytes && it.hasNext()) {
+            bytes -= size(it.next());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long size(WritableImage img) {
+        return 4L * (long)img.getWidth() * (long)img.getHeight();
+    }
+
+    /**
+     * throws out every picture
+     */
+    public void clear() {
+        sprites.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return      how many shapes were drawn from a picture that was already there
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return      how many pictures had to be made
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return      how many pictures were thrown out to stay in budget
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return      how much memory the pictures are using right now
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * sets the stats back to 0
+     */
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * @return      stats about the cache
+     */
+    public String toString() {
+        return "SpriteCache: sprites = " + sprites.size() + "  bytes = " + bytes + "/" + maxBytes + "  hits = " + hits + "  misses = " + misses + "  evictions = " + evictions;
+    }
+
+    /**
+     * Everything that changes what a shape's picture looks like.
+     */
+    private static class Key
+    {
+        private Class<?> type;
+        private double width;
+        private double height;
+        private Color fill;
+        private Color border;
+        private double lineWidth;
+        private double scale;
+        private int phaseX;
+        private int phaseY;
+
+        private void set(List<Shape> shapes, int i, double scale, int phaseX, int phaseY) {
+            type = ShapeStore.isEllipse(shapes, i) ? Ellipse.class : Rectangle.class;
+            width = ShapeStore.getWidth(shapes, i);
+            height = ShapeStore.getHeight(shapes, i);
+            fill = ShapeStore.getFillColor(shapes, i);
+            border = ShapeStore.getBorderColor(shapes, i);
+            lineWidth = ShapeStore.getLineWidth(shapes, i);
+            this.scale = scale;
+            this.phaseX = phaseX;
+            this.phaseY = phaseY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return type == k.type && width == k.width && height == k.height && lineWidth == k.lineWidth && scale == k.scale
+                && phaseX == k.phaseX && phaseY == k.phaseY && Objects.equals(fill, k.fill) && Objects.equals(border, k.border);
+        }
+
+        @Override
+        public int hashCode() {
+            //by hand, Objects.hash would box every field on every lookup
+            int h = type.hashCode();
+            h = 31 * h + Double.hashCode(width);
+            h = 31 * h + Double.hashCode(height);
+            h = 31 * h + Objects.hashCode(fill);
+            h = 31 * h + Objects.hashCode(border);
+            h = 31 * h + Double.hashCode(lineWidth);
+            h = 31 * h + Double.hashCode(scale);
+            h = 31 * h + phaseX;
+            return 31 * h + phaseY;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Raster backing store for the drawing area, shared by every view of the
+ * sketch. The world is split into square tiles at each zoom and each tile
+ * keeps a picture of the shapes on it, so repainting is mostly copying
+ * pictures instead of redrawing shapes. A tile is only drawn again after
+ * something that touches it changes.
+ *
+ * Tiles belong to the world, not to a view: tile (col, row) at a zoom covers
+ * the same part of the world for every view at that zoom, and views keep
+ * world 0, 0 on a whole pixel, so a second view at the same zoom just copies
+ * tiles the first one already drew. Tiles are kept in a map and the ones that
+ * haven't been used for the longest get thrown out once they add up to more
+ * than the byte budget.
+ *
+ * A view asks for tiles one at a time with drawTile(), giving a deadline. A
+ * tile can be left half drawn when the deadline passes and gets finished on
+ * the next call for it, any change to the cache starts it over.
+ *
+ * Tiles are drawn at the screen's pixel scale, so on a 2x display each one
+ * holds twice as many pixels each way and copies onto the canvas sharp. The
+ * scale a tile was drawn at is kept with it and a tile only counts as good at
+ * that scale, so moving to another screen redraws tiles as they're shown
+ * instead of throwing them all out.
+ *
+ * The world has no edges, and most of it is usually blank. A tile with no
+ * shapes on it keeps no picture, it just gets filled white when it's copied,
+ * so memory goes with how much of the world is drawn on. Blank tiles still
+ * take a map entry, so the number of tiles kept is capped as well as their
+ * bytes, otherwise panning over empty space would grow the map forever.
+ *
+ * Everything in here uses the JavaFX thread, same as the canvas.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class TileCache implements ShapeListener
+{
+    public static final int DEFAULT_TILE_SIZE = 128;
+    public static final double DEFAULT_LOD_THRESHOLD = 2;
+    public static final double FAST_LOD_THRESHOLD = 4;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    //how many tiles can be kept for each one the byte budget has room for, the rest are blank
+    private static final int TILES_PER_FULL_TILE = 4;
+
+    private final int tileSize;
+    private final long maxBytes;
+    private final int maxTiles;
+    private long bytes = 0;
+    //access ordered, so iterating starts at the least recently used
+    private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<Key, Tile>(256, 0.75f, true);
+    //filled in for each lookup so finding a tile doesn't allocate
+    private final Key probe = new Key();
+    private double pixelScale = 1;
+
+    //tile that was left half drawn in scratch, and the shape to carry on from
+    private Tile partialTile = null;
+    private int partialShape = 0;
+    private int partialDrawn = 0;
+
+    private final Canvas scratch;
+    private final SnapshotParameters params = new SnapshotParameters();
+    private final ShapeBatcher batcher = new ShapeBatcher();
+    private final OcclusionCuller culler = new OcclusionCuller();
+    private final SpriteCache sprites = new SpriteCache(SpriteCache.DEFAULT_MAX_BYTES);
+    private boolean spriteCaching = true;
+    private boolean batching = true;
+    private boolean occlusion = true;
+    private double lodThreshold = DEFAULT_LOD_THRESHOLD;
+    private boolean fast = false;
+
+    //stats, for tuning the tile size
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    /**
+     * Constructor for TileCache
+     *
+     * @param tileSize  width and height of one tile in pixels
+     */
+    public TileCache(int tileSize) {
+        this(tileSize, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructor for TileCache
+     *
+     * @param tileSize  width and height of one tile in pixels
+     * @param maxBytes  how much memory the tile pictures can use, 4 bytes a pixel
+     */
+    public TileCache(int tileSize, long maxBytes) {
+        if(tileSize <= 0) throw new IllegalArgumentException("Tile size must be positive.");
+        if(maxBytes <= 0) throw new IllegalArgumentException("Tile cache budget must be positive.");
+        this.tileSize = tileSize;
+        this.maxBytes = maxBytes;
+        long full = 4L * tileSize * tileSize;
+        maxTiles = (int)Math.min(Integer.MAX_VALUE, Math.max(256, TILES_PER_FULL_TILE * (maxBytes / full)));
+        scratch = new Canvas(tileSize, tileSize);
+        params.setFill(Color.WHITE);
+    }
+
+    /**
+     * marks every tile a new shape touches as out of date
+     *
+     * @param s     the shape that was added
+     */
+    public void shapeAdded(Shape s) {
+        invalidate(s);
+    }
+
+    /**
+     * marks every tile a removed shape touched as out of date
+     *
+     * @param s     the shape that was removed
+     */
+    public void shapeRemoved(Shape s) {
+        invalidate(s);
+    }
+
+    /**
+     * marks every tile that shapes changed in place touched as out of date
+     *
+     * @param x     left edge of the changed area in world coordinates
+     * @param y     top edge of the changed area in world coordinates
+     * @param w     width of the changed area
+     * @param h     height of the changed area
+     */
+    public void shapesChanged(double x, double y, double w, double h) {
+        invalidate(x, y, w, h);
+    }
+
+    /**
+     * marks every tile touched by a shape as out of date, at every zoom
+     *
+     * @param s     the shape that was added or removed
+     */
+    public void invalidate(Shape s) {
+        invalidate(s.getMinX(), s.getMinY(), s.getMaxX() - s.getMinX(), s.getMaxY() - s.getMinY());
+    }
+
+    /**
+     * marks every tile overlapping an area of the world as out of date, at every zoom
+     *
+     * @param x     left edge in world coordinates
+     * @param y     top edge in world coordinates
+     * @param w     width
+     * @param h     height
+     */
+    public void invalidate(double x, double y, double w, double h) {
+        for(Tile t : tiles.values()) {
+            //1 extra screen pixel for anti-aliasing, the shape's own padding shrinks when zoomed out
+            double pad = 1 / t.scale;
+            if(!t.valid || x + w <= t.worldX - pad || x >= t.worldX + t.worldSize + pad || y + h <= t.worldY - pad || y >= t.worldY + t.worldSize + pad) continue;
+            t.valid = false;
+            invalidations++;
+        }
+        //the shape list changed, so where a half drawn tile was up to doesn't mean anything anymore
+        restart();
+    }
+
+    /**
+     * throws away a half drawn tile
+     */
+    private void restart() {
+        partialTile = null;
+    }
+
+    /**
+     * marks the whole cache as out of date
+     */
+    public void invalidateAll() {
+        for(Tile t : tiles.values()) {
+            if(t.valid) invalidations++;
+            t.valid = false;
+        }
+        restart();
+    }
+
+    /**
+     * copies one tile onto a view's canvas, redrawing it first if it's out of date
+     *
+     * @param gc        GraphicsContext to draw onto, without the view's transform
+     * @param shapes    all shapes, bottom to top
+     * @param scale     the view's zoom
+     * @param col       which tile across, tile 0 starts at world x = 0
+     * @param row       which tile down, tile 0 starts at world y = 0
+     * @param sx        where the tile's left edge is on gc
+     * @param sy        where the tile's top edge is on gc
+     * @param deadline  System.nanoTime() to stop redrawing at
+     * @return          false if the deadline passed before the tile was finished, nothing got copied then
+     */
+    public boolean drawTile(GraphicsContext gc, List<Shape> shapes, double scale, long col, long row, double sx, double sy, long deadline) {
+        probe.set(scale, col, row);
+        Tile t = tiles.get(probe);
+        if(t == null) {
+            Key key = new Key();
+            key.set(scale, col, row);
+            t = new Tile(key, tileSize);
+            tiles.put(key, t);
+        }
+        if(t.valid && t.pixelScale == pixelScale) {
+            hits++;
+        } else if(rasterize(t, shapes, deadline)) {
+            misses++;
+            evict();
+        } else {
+            return false;
+        }
+        if(t.image == null) {
+            gc.setFill(Color.WHITE);
+            gc.fillRect(sx, sy, tileSize, tileSize);
+        } else {
+            gc.drawImage(t.image, 0, 0, tileSize * pixelScale, tileSize * pixelScale, sx, sy, tileSize, tileSize);
+        }
+        return true;
+    }
+
+    /**
+     * redraws one tile from the shapes that overlap it, anything off the tile is culled before drawing.
+     * If the deadline passes part way through the tile is left half drawn in scratch.
+     *
+     * @return      true if the tile got finished
+     */
+    private boolean rasterize(Tile t, List<Shape> shapes, long deadline) {
+        double wx = t.worldX;
+        double wy = t.worldY;
+        double ws = t.worldSize;
+        double scale = t.scale;
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        if(partialTile != t) {
+            gc.setFill(Color.WHITE);
+            gc.fillRect(0, 0, scratch.getWidth(), scratch.getHeight());
+            partialTile = t;
+            partialShape = 0;
+            partialDrawn = 0;
+            if(occlusion) culler.compute(shapes, wx, wy, ws, ws, 1 / scale);
+        }
+        gc.save();
+        gc.scale(pixelScale, pixelScale);
+        gc.scale(scale, scale);
+        gc.translate(-wx, -wy);
+        double lod = getEffectiveLodThreshold();
+        batcher.setMinStroke(getMinStroke(scale));
+        batcher.setPixelSize(1 / (scale * pixelScale));
+        int n = shapes.size();
+        int k = partialShape;
+        for(; k < n; k++) {
+            //checking the clock is not free, so only every 64 shapes
+            if(((k - partialShape) & 63) == 63 && System.nanoTime() > deadline) break;
+            //everything straight from the list, a ShapeStore doesn't make a single object for this
+            if(!ShapeStore.intersects(shapes, k, wx, wy, ws, ws)) continue;
+            if(occlusion && culler.isHidden(k)) continue;
+            partialDrawn++;
+            double minX = ShapeStore.getMinX(shapes, k);
+            double minY = ShapeStore.getMinY(shapes, k);
+            if(isDot(shapes, k, scale, lod)) {
+                if(batching) batcher.addDot(shapes, k, dotColor(shapes, k), 1 / scale);
+                else drawShape(gc, shapes, k, scale);
+            } else if(spriteCaching && sprites.isWorthCaching(shapes, k, scale * pixelScale)) {
+                //anything batched so far has to go down first to keep the order
+                if(batching) batcher.flush(gc);
+                sprites.draw(gc, shapes, k, scale * pixelScale, (minX - wx) * scale * pixelScale, (minY - wy) * scale * pixelScale);
+            } else if(batching) {
+                batcher.add(shapes, k);
+            } else {
+                drawShape(gc, shapes, k, scale);
+            }
+        }
+        if(batching) batcher.flush(gc);
+        gc.restore();
+        if(k < n) {
+            partialShape = k;
+            return false;
+        }
+
+        partialTile = null;
+        bytes -= t.bytes();
+        //a blank tile isn't worth a picture
+        t.image = partialDrawn == 0 ? null : scratch.snapshot(params, t.image);
+        bytes += t.bytes();
+        t.valid = true;
+        t.pixelScale = pixelScale;
+        t.rough = fast;
+        return true;
+    }
+
+    /**
+     * throws out the least recently used tiles until the cache fits its budget,
+     * in bytes and in how many tiles it keeps
+     */
+    private void evict() {
+        Iterator<Tile> it = tiles.values().iterator();
+        while((bytes > maxBytes || tiles.size() > maxTiles) && it.hasNext()) {
+            Tile t = it.next();
+            bytes -= t.bytes();
+            if(t == partialTile) restart();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * sets how many screen pixels there are per canvas unit, 2 on a typical HiDPI display.
+     * Tiles drawn at another scale get redrawn the next time they're drawn.
+     *
+     * @param pixelScale    the screen's output scale
+     */
+    public void setPixelScale(double pixelScale) {
+        if(pixelScale <= 0) throw new IllegalArgumentException("Pixel scale must be positive.");
+        if(this.pixelScale == pixelScale) return;
+        this.pixelScale = pixelScale;
+        scratch.setWidth(Math.ceil(tileSize * pixelScale));
+        scratch.setHeight(Math.ceil(tileSize * pixelScale));
+        restart();
+    }
+
+    /**
+     * draws one shape the way a tile would at the current quality, without batching or a
+     * sprite: a plain box if it's too small to see, and no outline if fast quality leaves
+     * it out. For drawing shapes straight onto a canvas next to tiles.
+     *
+     * @param gc        GraphicsContext to draw onto, already set up for world coordinates
+     * @param shapes    the shapes
+     * @param k         index of the shape
+     * @param scale     pixels per world unit
+     */
+    public void drawShape(GraphicsContext gc, List<Shape> shapes, int k, double scale) {
+        if(isDot(shapes, k, scale, getEffectiveLodThreshold())) {
+            //too small to see the difference, just a box in whichever color covers most of it
+            gc.setFill(dotColor(shapes, k));
+            gc.fillRect(ShapeStore.getX(shapes, k), ShapeStore.getY(shapes, k),
+                Math.max(ShapeStore.getWidth(shapes, k), 1 / scale), Math.max(ShapeStore.getHeight(shapes, k), 1 / scale));
+        } else if(ShapeStore.getLineWidth(shapes, k) < getMinStroke(scale)) {
+            gc.setFill(ShapeStore.getFillColor(shapes, k));
+            ShapeStore.fill(shapes, k, gc);
+        } else {
+            ShapeStore.draw(shapes, k, gc);
+        }
+    }
+
+    /**
+     * @return      the level of detail size in use right now, fast quality makes it bigger
+     */
+    private double getEffectiveLodThreshold() {
+        return fast ? Math.max(lodThreshold, FAST_LOD_THRESHOLD) : lodThreshold;
+    }
+
+    /**
+     * @return      outlines thinner than this in world units are left out, fast quality leaves out ones under a pixel
+     */
+    private double getMinStroke(double scale) {
+        return fast ? 1 / scale : 0;
+    }
+
+    /**
+     * @return      true if a shape is under lod pixels both ways and only gets drawn as a box
+     */
+    private static boolean isDot(List<Shape> shapes, int k, double scale, double lod) {
+        return (ShapeStore.getMaxX(shapes, k) - ShapeStore.getMinX(shapes, k)) * scale < lod
+            && (ShapeStore.getMaxY(shapes, k) - ShapeStore.getMinY(shapes, k)) * scale < lod;
+    }
+
+    /**
+     * @return      the color a shape's box gets, the outline's if that covers most of it
+     */
+    private static Color dotColor(List<Shape> shapes, int k) {
+        double w = ShapeStore.getWidth(shapes, k);
+        double h = ShapeStore.getHeight(shapes, k);
+        return ShapeStore.getLineWidth(shapes, k) * 2 >= Math.min(w, h) ? ShapeStore.getBorderColor(shapes, k) : ShapeStore.getFillColor(shapes, k);
+    }
+
+    /**
+     * @return      screen pixels per canvas unit that tiles are drawn at
+     */
+    public double getPixelScale() {
+        return pixelScale;
+    }
+
+    /**
+     * @param batching  true to draw same styled shapes in batches, false to draw them one by one
+     */
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    /**
+     * sets how small a shape has to be on screen before it gets drawn as a plain box.
+     * Anything under this many pixels both ways skips the real fill and stroke.
+     * Changing it redraws everything.
+     *
+     * @param pixels    size in screen pixels, 0 turns level of detail off
+     */
+    public void setLodThreshold(double pixels) {
+        lodThreshold = pixels;
+        invalidateAll();
+    }
+
+    /**
+     * turns fast quality on or off. While it's on, tiles get drawn with a bigger level of
+     * detail size and without outlines thinner than a pixel. Turning it off marks every
+     * tile drawn that way as out of date, so the next draw does them properly.
+     *
+     * @param fast      true for fast quality, false for full quality
+     */
+    public void setFastQuality(boolean fast) {
+        if(this.fast == fast) return;
+        this.fast = fast;
+        if(fast) return;
+        for(Tile t : tiles.values()) {
+            if(t.rough) {
+                t.rough = false;
+                t.valid = false;
+            }
+        }
+        restart();
+    }
+
+    /**
+     * @return      true if tiles are being drawn in fast quality
+     */
+    public boolean isFastQuality() {
+        return fast;
+    }
+
+    /**
+     * @return      the level of detail size in screen pixels
+     */
+    public double getLodThreshold() {
+        return lodThreshold;
+    }
+
+    /**
+     * @param occlusion     true to skip shapes buried under opaque shapes, false to draw everything
+     */
+    public void setOcclusionCulling(boolean occlusion) {
+        this.occlusion = occlusion;
+    }
+
+    /**
+     * @param spriteCaching     true to copy thick outlined ellipses from saved pictures, false to draw them every time
+     */
+    public void setSpriteCaching(boolean spriteCaching) {
+        this.spriteCaching = spriteCaching;
+        if(!spriteCaching) sprites.clear();
+        invalidateAll();
+    }
+
+    /**
+     * @return      the sprite cache used when redrawing tiles, has the sprite stats
+     */
+    public SpriteCache getSprites() {
+        return sprites;
+    }
+
+    /**
+     * @return      the occlusion culler used when redrawing tiles, has the culling stats
+     */
+    public OcclusionCuller getCuller() {
+        return culler;
+    }
+
+    /**
+     * @return      the batcher used when redrawing tiles, has the batching stats
+     */
+    public ShapeBatcher getBatcher() {
+        return batcher;
+    }
+
+    /**
+     * @return      how many tiles were copied without redrawing
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return      how many tiles had to be redrawn
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return      how many times a good tile was marked out of date
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return      how many tiles got thrown out to stay under the budget
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return      how many tiles are kept right now
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return      how many kept tiles are blank and have no picture
+     */
+    public int getBlankTileCount() {
+        int n = 0;
+        for(Tile t : tiles.values()) {
+            if(t.valid && t.image == null) n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return      the most tiles that get kept, blank ones included
+     */
+    public int getMaxTiles() {
+        return maxTiles;
+    }
+
+    /**
+     * @return      how many bytes the kept tile pictures use
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * sets all the stats back to 0
+     */
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+        invalidations = 0;
+        evictions = 0;
+    }
+
+    /**
+     * @return      the tile size in pixels
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return      stats about the cache
+     */
+    public String toString() {
+        return "TileCache " + tiles.size() + " tiles (" + getBlankTileCount() + " blank) @ " + tileSize + "px (" + (bytes >> 10) + "KB): hits = " + hits + "  misses = " + misses + "  invalidations = " + invalidations + "  evictions = " + evictions;
+    }
+
+    /**
+     * which tile, a zoom and a place in the grid at that zoom
+     */
+    private static class Key
+    {
+        private double scale;
+        private long col;
+        private long row;
+
+        private void set(double scale, long col, long row) {
+            this.scale = scale;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return k.scale == scale && k.col == col && k.row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = Double.doubleToLongBits(scale);
+            h = h * 31 + col;
+            h = h * 31 + row;
+            return (int)(h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * one tile's picture and what part of the world it shows
+     */
+    private static class Tile
+    {
+        private final double scale;
+        private final double worldX;
+        private final double worldY;
+        private final double worldSize;
+        private WritableImage image;
+        private boolean valid = false;
+        private boolean rough = false;
+        private double pixelScale = 0;
+
+        private Tile(Key key, int tileSize) {
+            scale = key.scale;
+            worldSize = tileSize / scale;
+            worldX = key.col * worldSize;
+            worldY = key.row * worldSize;
+        }
+
+        /**
+         * @return      how much memory the picture takes up
+         */
+        private long bytes() {
+            return image == null ? 0 : 4L * (long)image.getWidth() * (long)image.getHeight();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+import javafx.scene.paint.Color;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A picture of the document at several sizes, each one half the size of the
+ * one before, for things like the minimap that want an overview without
+ * drawing every shape again.
+ *
+ * The document has no edges, so every level is a sparse set of square tiles
+ * kept in a hash by tile coordinates. Only tiles with a shape on them are
+ * kept at all, anything else is white, so memory goes with how much of the
+ * world is drawn on and not with how far apart the shapes are.
+ *
+ * Only the biggest level is drawn from shapes. A change only marks the tiles
+ * it touches. update() draws those tiles again, getting the shapes on each
+ * one from a PickIndex, and shrinks each one into its quarter of the tile
+ * above it by averaging 2x2 blocks of pixels, so adding or undoing a shape
+ * costs about the same no matter how big the document is.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class TilePyramid
+{
+    public static final int TILE_SIZE = 64;
+    public static final int WHITE = 0xffffffff;
+
+    private final double baseScale;
+    private final HashMap<Long, Raster>[] levels;
+    //level 0 tiles to draw again on the next update
+    private final HashSet<Long> dirty = new HashSet<Long>();
+
+    //stats
+    private long tilesDrawn;
+    private long updates;
+
+    /**
+     * Constructor for TilePyramid, it starts out empty
+     *
+     * @param baseScale     pixels per world unit in the biggest level
+     * @param levelCount    how many levels, each one half the size of the one before
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TilePyramid(double baseScale, int levelCount) {
+        if(baseScale <= 0) throw new IllegalArgumentException("Pyramid scale must be positive.");
+        if(levelCount <= 0) throw new IllegalArgumentException("Pyramid needs at least one level.");
+        this.baseScale = baseScale;
+        levels = new HashMap[levelCount];
+        for(int i = 0; i < levelCount; i++) levels[i] = new HashMap<Long, Raster>();
+    }
+
+    /**
+     * @return      one long holding a tile's column and row, the column mixed with the
+     *              row so the Long's hash isn't the same for every tile with the same col ^ row
+     */
+    private static long key(int col, int row) {
+        return ((long)row << 32) | ((col ^ row * 0x9e3779b1) & 0xffffffffL);
+    }
+
+    private static int col(long key) {
+        return (int)key ^ row(key) * 0x9e3779b1;
+    }
+
+    private static int row(long key) {
+        return (int)(key >> 32);
+    }
+
+    /**
+     * marks the tiles a shape touches as out of date
+     *
+     * @param s     the shape that was added or removed
+     */
+    public void invalidate(Shape s) {
+        invalidate(s.getMinX(), s.getMinY(), s.getMaxX() - s.getMinX(), s.getMaxY() - s.getMinY());
+    }
+
+    /**
+     * marks the tiles overlapping an area of the world as out of date
+     *
+     * @param x     left edge in world coordinates
+     * @param y     top edge in world coordinates
+     * @param w     width
+     * @param h     height
+     */
+    public void invalidate(double x, double y, double w, double h) {
+        //a pixel of slack for anti-aliasing, same as the other caches
+        int c0 = (int)Math.floor((x * baseScale - 1) / TILE_SIZE);
+        int r0 = (int)Math.floor((y * baseScale - 1) / TILE_SIZE);
+        int c1 = (int)Math.floor(((x + w) * baseScale + 1) / TILE_SIZE);
+        int r1 = (int)Math.floor(((y + h) * baseScale + 1) / TILE_SIZE);
+        for(int r = r0; r <= r1; r++) {
+            for(int c = c0; c <= c1; c++) {
+                dirty.add(key(c, r));
+            }
+        }
+    }
+
+    /**
+     * @return      true if update() has something to do
+     */
+    public boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * redraws the out of date tiles and shrinks them into the smaller levels.
+     * Tiles that end up with nothing on them are thrown out.
+     *
+     * @param shapes    all shapes, bottom to top
+     * @param index     a pick index over the same shapes, so a tile only looks at the shapes on it
+     */
+    public void update(List<Shape> shapes, PickIndex index) {
+        if(dirty.isEmpty()) return;
+        updates++;
+        double ws = TILE_SIZE / baseScale;
+        for(Long k : dirty) {
+            int c = col(k);
+            int r = row(k);
+            double wx = c * ws;
+            double wy = r * ws;
+            Raster tile = null;
+            int[] on = index.query(wx, wy, ws, ws);
+            for(int i = 0; i < on.length; i++) {
+                if(tile == null) {
+                    tile = levels[0].get(k);
+                    if(tile == null) {
+                        tile = new Raster(TILE_SIZE, TILE_SIZE);
+                        levels[0].put(k, tile);
+                    }
+                    tile.setTransform(baseScale, -(double)c * TILE_SIZE, -(double)r * TILE_SIZE);
+                    tile.clear(Color.WHITE);
+                }
+                ShapeStore.draw(shapes, on[i], tile);
+            }
+            //nothing on it anymore, so it doesn't need keeping
+            if(tile == null) levels[0].remove(k);
+            tilesDrawn++;
+        }
+
+        //each level's tiles are made from the four under them
+        HashSet<Long> changed = dirty;
+        for(int l = 1; l < levels.length; l++) {
+            HashSet<Long> parents = new HashSet<Long>();
+            for(Long k : changed) parents.add(key(col(k) >> 1, row(k) >> 1));
+            for(Long k : parents) rebuild(l, col(k), row(k));
+            if(changed != dirty) changed.clear();
+            changed = parents;
+        }
+        dirty.clear();
+    }
+
+    /**
+     * makes one tile from the four tiles of the level below it, or throws it out if they're all empty
+     */
+    private void rebuild(int level, int col, int row) {
+        HashMap<Long, Raster> below = levels[level - 1];
+        long k = key(col, row);
+        Raster tile = levels[level].get(k);
+        boolean any = false;
+        for(int q = 0; q < 4; q++) {
+            Raster child = below.get(key(2 * col + (q & 1), 2 * row + (q >> 1)));
+            if(child == null) continue;
+            if(tile == null) {
+                tile = new Raster(TILE_SIZE, TILE_SIZE);
+                levels[level].put(k, tile);
+            }
+            if(!any) tile.clear(Color.WHITE);
+            any = true;
+            downsample(child, tile, (q & 1) * TILE_SIZE / 2, (q >> 1) * TILE_SIZE / 2);
+        }
+        if(!any) levels[level].remove(k);
+    }
+
+    /**
+     * fills a quarter of a tile with the average of each 2x2 block of a tile from the level below
+     */
+    private static void downsample(Raster src, Raster dst, int ox, int oy) {
+        int[] s = src.getPixels();
+        int[] d = dst.getPixels();
+        for(int y = 0; y < TILE_SIZE / 2; y++) {
+            int top = 2 * y * TILE_SIZE;
+            int bottom = top + TILE_SIZE;
+            int out = (oy + y) * TILE_SIZE + ox;
+            for(int x = 0; x < TILE_SIZE / 2; x++) {
+                d[out + x] = average(s[top + 2 * x], s[top + 2 * x + 1], s[bottom + 2 * x], s[bottom + 2 * x + 1]);
+            }
+        }
+    }
+
+    /**
+     * @return      the average of four premultiplied colors, rounded
+     */
+    private static int average(int a, int b, int c, int d) {
+        //two channels at a time, 4 * 255 still fits in each half
+        int rb = (a & 0x00ff00ff) + (b & 0x00ff00ff) + (c & 0x00ff00ff) + (d & 0x00ff00ff) + 0x00020002;
+        int ag = ((a >>> 8) & 0x00ff00ff) + ((b >>> 8) & 0x00ff00ff) + ((c >>> 8) & 0x00ff00ff) + ((d >>> 8) & 0x00ff00ff) + 0x00020002;
+        return ((ag << 6) & 0xff00ff00) | ((rb >>> 2) & 0x00ff00ff);
+    }
+
+    /**
+     * copies part of the world out of one level into a picture, taking the nearest pixel
+     *
+     * @param level     which level to read, 0 is the biggest
+     * @param wx        world x at the picture's left edge
+     * @param wy        world y at the picture's top edge
+     * @param unitsPerPixel     how much of the world each pixel of the picture covers
+     * @param dst       the picture, premultiplied ARGB
+     * @param w         width of the picture
+     * @param h         height of the picture
+     */
+    public void render(int level, double wx, double wy, double unitsPerPixel, int[] dst, int w, int h) {
+        HashMap<Long, Raster> tiles = levels[level];
+        double s = baseScale / (1 << level);
+        //neighbouring pixels are almost always on the same tile, so only look it up when that changes
+        long lastKey = 0;
+        Raster last = null;
+        boolean looked = false;
+        for(int y = 0; y < h; y++) {
+            long py = (long)Math.floor((wy + (y + 0.5) * unitsPerPixel) * s);
+            int r = (int)Math.floorDiv(py, TILE_SIZE);
+            int ty = Math.floorMod(py, TILE_SIZE);
+            for(int x = 0; x < w; x++) {
+                long px = (long)Math.floor((wx + (x + 0.5) * unitsPerPixel) * s);
+                long k = key((int)Math.floorDiv(px, TILE_SIZE), r);
+                if(!looked || k != lastKey) {
+                    last = tiles.get(k);
+                    lastKey = k;
+                    looked = true;
+                }
+                dst[y * w + x] = last == null ? WHITE : last.getPixels()[ty * TILE_SIZE + Math.floorMod(px, TILE_SIZE)];
+            }
+        }
+    }
+
+    /**
+     * @return      how many levels there are, level 0 is the biggest
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @param level     which level, 0 is the biggest
+     * @param col       which tile across, tile 0 starts at world x = 0
+     * @param row       which tile down, tile 0 starts at world y = 0
+     * @return          the tile's picture, null if there's nothing on it
+     */
+    public Raster getTile(int level, int col, int row) {
+        return levels[level].get(key(col, row));
+    }
+
+    /**
+     * @param unitsPerPixel     how much of the world each pixel is going to cover
+     * @return          the smallest level whose pixels still cover no more than that
+     */
+    public int levelFor(double unitsPerPixel) {
+        int l = 0;
+        while(l + 1 < levels.length && (1 << (l + 1)) / baseScale <= unitsPerPixel) l++;
+        return l;
+    }
+
+    /**
+     * @return      pixels per world unit in the biggest level
+     */
+    public double getBaseScale() {
+        return baseScale;
+    }
+
+    /**
+     * @return      how many tiles are kept over all levels
+     */
+    public int getTileCount() {
+        int n = 0;
+        for(int i = 0; i < levels.length; i++) n += levels[i].size();
+        return n;
+    }
+
+    /**
+     * @return      how many bytes the kept tiles use, 4 bytes a pixel
+     */
+    public long getBytes() {
+        return 4L * TILE_SIZE * TILE_SIZE * getTileCount();
+    }
+
+    /**
+     * @return      stats about the pyramid
+     */
+    public String toString() {
+        return "TilePyramid: levels = " + levels.length + "  tiles = " + getTileCount() + "  updates = " + updates + "  tiles drawn = " + tilesDrawn;
+    }
+}
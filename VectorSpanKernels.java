@@ -0,0 +1,74 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The same span loops as SpanKernels written with the Vector API, so they run
+ * as many pixels at a time as the CPU has room for whether HotSpot manages to
+ * vectorize the plain loops or not. The answers are the same bit for bit.
+ *
+ * The Vector API is still an incubator module, so this class is only compiled
+ * and run with --add-modules jdk.incubator.vector. SpanKernels only calls into
+ * here when that module is there, nothing else should use it directly.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+class VectorSpanKernels
+{
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorSpanKernels() {
+    }
+
+    /**
+     * @return      how many pixels one vector holds
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * sets pixels from up to to to one color
+     *
+     * @param pixels    the pixels to fill
+     * @param from      first pixel
+     * @param to        pixel after the last one
+     * @param argb      premultiplied color
+     */
+    static void fill(int[] pixels, int from, int to, int argb) {
+        IntVector color = IntVector.broadcast(SPECIES, argb);
+        int i = from;
+        for(int end = from + SPECIES.loopBound(to - from); i < end; i += SPECIES.length()) {
+            color.intoArray(pixels, i);
+        }
+        for(; i < to; i++) {
+            pixels[i] = argb;
+        }
+    }
+
+    /**
+     * draws one see-through color over pixels from up to to, alpha has to be between 1 and 254
+     *
+     * @param pixels    the pixels to draw over
+     * @param from      first pixel
+     * @param to        pixel after the last one
+     * @param argb      premultiplied color
+     */
+    static void blendFill(int[] pixels, int from, int to, int argb) {
+        int inv = 255 - (argb >>> 24);
+        int i = from;
+        for(int end = from + SPECIES.loopBound(to - from); i < end; i += SPECIES.length()) {
+            IntVector dst = IntVector.fromArray(SPECIES, pixels, i);
+            //red and blue in one, alpha and green in the other, same as the scalar loop
+            IntVector rb = dst.and(0x00ff00ff).mul(inv).add(0x00800080);
+            IntVector ag = dst.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff).mul(inv).add(0x00800080);
+            rb = rb.add(rb.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff)).lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff);
+            ag = ag.add(ag.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff)).and(0xff00ff00);
+            ag.or(rb).add(argb).intoArray(pixels, i);
+        }
+        for(; i < to; i++) {
+            pixels[i] = SpanKernels.blend(argb, pixels[i]);
+        }
+    }
+}
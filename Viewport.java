@@ -0,0 +1,203 @@
+import javafx.scene.canvas.GraphicsContext;
+import java.util.List;
+
+/**
+ * Zoom and pan for the drawing area. Shapes keep their pos and siz in world
+ * coordinates, this maps those to the screen and back. It also knows which
+ * part of the world is on screen, so shapes outside of it can be skipped
+ * without ever calling draw on them.
+ *
+ * The zoom is kept to steps of 1/1024 of a doubling and the pan to whole
+ * screen pixels. That way two views at the same zoom always have exactly the
+ * same scale, and tiles drawn for one line up on whole pixels in the other,
+ * so views can share cached tiles.
+ *
+ * @author      Zachary Sousa
+ * @version     1.00
+ */
+public class Viewport
+{
+    public static final double MIN_SCALE = 1.0 / 64;
+    public static final double MAX_SCALE = 64;
+
+    private double width;
+    private double height;
+    private double scale = 1;
+    private double offX = 0;
+    private double offY = 0;
+
+    /**
+     * Constructor for Viewport
+     *
+     * @param width     width of the area on screen
+     * @param height    height of the area on screen
+     */
+    public Viewport(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * sets up a GraphicsContext so world coordinates land in the right place on screen
+     *
+     * @param gc    GraphicsContext to transform
+     */
+    public void apply(GraphicsContext gc) {
+        gc.scale(scale, scale);
+        gc.translate(-offX, -offY);
+    }
+
+    /**
+     * zooms in or out while keeping the world point under the given screen point still
+     *
+     * @param sx        screen x to zoom around
+     * @param sy        screen y to zoom around
+     * @param factor    how much to multiply the zoom by
+     */
+    public void zoom(double sx, double sy, double factor) {
+        double wx = toWorldX(sx);
+        double wy = toWorldY(sy);
+        scale = quantize(Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor)));
+        offX = wx - sx / scale;
+        offY = wy - sy / scale;
+        snap();
+    }
+
+    /**
+     * @return      the nearest zoom that's a whole number of 1/1024 steps of a doubling
+     */
+    private static double quantize(double scale) {
+        return Math.pow(2, Math.round(Math.log(scale) / Math.log(2) * 1024) / 1024.0);
+    }
+
+    /**
+     * moves the view so world 0, 0 lands on a whole screen pixel
+     */
+    private void snap() {
+        offX = Math.round(offX * scale) / scale;
+        offY = Math.round(offY * scale) / scale;
+    }
+
+    /**
+     * moves the view
+     *
+     * @param dx    screen pixels to move right
+     * @param dy    screen pixels to move down
+     */
+    public void pan(double dx, double dy) {
+        offX -= dx / scale;
+        offY -= dy / scale;
+        snap();
+    }
+
+    /**
+     * changes the size of the area on screen, the top left corner stays put
+     *
+     * @param width     width of the area on screen
+     * @param height    height of the area on screen
+     */
+    public void setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * goes back to 100% zoom with the world origin in the corner
+     */
+    public void reset() {
+        scale = 1;
+        offX = 0;
+        offY = 0;
+    }
+
+    /**
+     * @param s     the shape to check
+     * @return      true if any part of the shape could be on screen
+     */
+    public boolean isVisible(Shape s) {
+        return s.intersects(offX, offY, width / scale, height / scale);
+    }
+
+    /**
+     * @param shapes    the shapes
+     * @param i         index of the shape to check
+     * @return          true if any part of the shape could be on screen, without a copy if it's a ShapeStore
+     */
+    public boolean isVisible(List<Shape> shapes, int i) {
+        return ShapeStore.intersects(shapes, i, offX, offY, width / scale, height / scale);
+    }
+
+    /**
+     * @param wx    world x
+     * @return      screen x
+     */
+    public double toScreenX(double wx) {
+        return (wx - offX) * scale;
+    }
+
+    /**
+     * @param wy    world y
+     * @return      screen y
+     */
+    public double toScreenY(double wy) {
+        return (wy - offY) * scale;
+    }
+
+    /**
+     * @param sx    screen x
+     * @return      world x
+     */
+    public double toWorldX(double sx) {
+        return sx / scale + offX;
+    }
+
+    /**
+     * @param sy    screen y
+     * @return      world y
+     */
+    public double toWorldY(double sy) {
+        return sy / scale + offY;
+    }
+
+    /**
+     * @return      how many screen pixels world x = 0 is left of the view's left edge, always whole
+     */
+    public long getOriginX() {
+        return Math.round(offX * scale);
+    }
+
+    /**
+     * @return      how many screen pixels world y = 0 is above the view's top edge, always whole
+     */
+    public long getOriginY() {
+        return Math.round(offY * scale);
+    }
+
+    /**
+     * @return      the zoom, 1 is 100%
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return      width of the area on screen
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return      height of the area on screen
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return      stats about the Viewport
+     */
+    public String toString() {
+        return "Viewport: zoom = " + scale + "  x = " + offX + "  y = " + offY;
+    }
+}